@@ -21,6 +21,8 @@ public class Ball extends Sprite {
 
 	private Vector2f direction = new Vector2f(0, 0);
 	private AssetManager am;
+	private final int soundBlock;
+	private final int soundStick;
 	private Stick stick;
 
 	private Logger logger = LogManager.getLogger(this);
@@ -73,6 +75,8 @@ public class Ball extends Sprite {
 		this.windowHeight = windowHeight;
 		this.windowWidth = windowWidth;
 		this.am = am;
+		this.soundBlock = am.getSoundId("sounds/hitBlock.wav");
+		this.soundStick = am.getSoundId("sounds/hitStick.wav");
 		this.stick = stick;
 		this.enableCE = enableCE;
 	}
@@ -237,13 +241,13 @@ public class Ball extends Sprite {
 	 */
 	public void playSound(GameObject o) {
 		if (o instanceof Block) {
-			am.playSound("sounds/hitBlock.wav");
+			am.playSound(soundBlock);
 			logger.debug("play Block Sound");
 		} else if (o instanceof Stick) {
-			am.playSound("sounds/hitStick.wav");
+			am.playSound(soundStick);
 			logger.debug("play Stick Sound");
 		} else
-			am.playSound("sounds/hitBlock.wav");
+			am.playSound(soundBlock);
 	}
 
 	/***************************************************
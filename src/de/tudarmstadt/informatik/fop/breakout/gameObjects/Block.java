@@ -3,7 +3,6 @@ package de.tudarmstadt.informatik.fop.breakout.gameObjects;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.newdawn.slick.GameContainer;
-import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
 import org.newdawn.slick.geom.Vector2f;
 import org.newdawn.slick.state.StateBasedGame;
@@ -22,7 +21,9 @@ public class Block extends Sprite implements IHitable {
 
 	private Logger logger = LogManager.getLogger(this);
 	private int life;
-	private int theme;
+	// image handles per life, see ThemeManager
+	private final int[] imageHandles;
+	private int imageHandle;
 	private AssetManager am;
 
 	/**
@@ -44,7 +45,32 @@ public class Block extends Sprite implements IHitable {
 	 */
 	public Block(Vector2f position, float width, float height, int life, AssetManager am, int theme)
 			throws SlickException {
-		super(am.getImg(ThemeManager.getBlockPicturePath(life, theme)), position, width, height, true);
+		this(position, width, height, life, am, ThemeManager.resolveBlockHandles(theme, am));
+	}
+
+	/**
+	 * Create a new instance of Block
+	 * 
+	 * @param position
+	 *            The center position of the Block
+	 * @param width
+	 *            The width of the Block
+	 * @param height
+	 *            The height of the Block
+	 * @param life
+	 *            The life of the Block
+	 * @param am
+	 *            Manages pictures and sound needed
+	 * @param imageHandles
+	 *            Image handle table of the theme, see
+	 *            {@link ThemeManager#resolveBlockHandles(int, AssetManager)}
+	 * @throws SlickException
+	 */
+	public Block(Vector2f position, float width, float height, int life, AssetManager am, int[] imageHandles)
+			throws SlickException {
+		super(am.getImg(ThemeManager.getBlockHandle(imageHandles, life)), position, width, height, true);
+		this.imageHandles = imageHandles;
+		this.imageHandle = ThemeManager.getBlockHandle(imageHandles, life);
 		this.life = life;
 		this.am = am;
 	}
@@ -64,27 +90,30 @@ public class Block extends Sprite implements IHitable {
 		return life;
 	}
 
-	/**
-	 * Returns the appropriate image for the Block
-	 * 
-	 * @return the appropriate image for the Block
-	 * @throws SlickException
-	 */
-	private Image getPicture() throws SlickException {
-		return am.getImg(ThemeManager.getBlockPicturePath(life, theme));
-	}
-
 	/**
 	 * Update the picture that represents the Block
 	 */
 	private void updatePicture() {
+		int handle = ThemeManager.getBlockHandle(imageHandles, life);
+		if (handle == imageHandle)
+			return;
 		try {
-			this.setImage(getPicture());
+			this.setImage(am.getImg(handle));
+			am.releaseImg(imageHandle);
+			imageHandle = handle;
 		} catch (SlickException e) {
 			logger.error("Error on block picture change! {}", e);
 		}
 	}
 
+	/**
+	 * Release the image of this Block<br>
+	 * To be called once the Block is removed from the game
+	 */
+	public void releaseImage() {
+		am.releaseImg(imageHandle);
+	}
+
 	/**
 	 * Decrement the life by 1
 	 * 
@@ -0,0 +1,193 @@
+package de.tudarmstadt.informatik.fop.breakout.gameObjects;
+
+import java.util.Random;
+
+import org.newdawn.slick.Color;
+import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
+import org.newdawn.slick.geom.Vector2f;
+import org.newdawn.slick.opengl.TextureImpl;
+import org.newdawn.slick.opengl.renderer.Renderer;
+import org.newdawn.slick.opengl.renderer.SGL;
+import org.newdawn.slick.state.StateBasedGame;
+
+import de.tudarmstadt.informatik.fop.breakout.states.GameState;
+
+/**
+ * Particle system for debris effects<br>
+ * All particles are stored in preallocated arrays and live inside this single
+ * GameObject, so they never show up in the object list of the state.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class ParticleSystem extends GameObject {
+
+	private final static float gravity = 400f;
+	private final static float particleSize = 4f;
+
+	private final int capacity;
+	private int count = 0;
+	private long dropped = 0;
+	private final Random random = new Random();
+
+	// particle data, index i belongs to particle i
+	private final float[] posX;
+	private final float[] posY;
+	private final float[] velX;
+	private final float[] velY;
+	private final float[] lifeLeft;
+	private final float[] lifeTotal;
+	private final float[] colorR;
+	private final float[] colorG;
+	private final float[] colorB;
+
+	/**
+	 * Creates a new ParticleSystem
+	 *
+	 * @param capacity
+	 *            Maximum amount of particles alive at the same time
+	 */
+	public ParticleSystem(final int capacity) {
+		super(new Vector2f(0, 0), 0, 0, false);
+		this.capacity = capacity;
+		posX = new float[capacity];
+		posY = new float[capacity];
+		velX = new float[capacity];
+		velY = new float[capacity];
+		lifeLeft = new float[capacity];
+		lifeTotal = new float[capacity];
+		colorR = new float[capacity];
+		colorG = new float[capacity];
+		colorB = new float[capacity];
+	}
+
+	/**
+	 * Emit a burst of particles at the specified position<br>
+	 * Particles exceeding the capacity are dropped and counted
+	 *
+	 * @param x
+	 *            center x coordinate
+	 * @param y
+	 *            center y coordinate
+	 * @param amount
+	 *            amount of particles to emit
+	 * @param speed
+	 *            maximum speed in pixel per second
+	 * @param lifetime
+	 *            lifetime in milliseconds
+	 * @param color
+	 *            color of the particles
+	 */
+	public void emit(final float x, final float y, final int amount, final float speed, final float lifetime,
+			final Color color) {
+		for (int n = 0; n < amount; n++) {
+			if (count >= capacity) {
+				dropped += amount - n;
+				return;
+			}
+			final int i = count++;
+			final double angle = random.nextDouble() * Math.PI * 2;
+			final float v = speed * (0.25f + 0.75f * random.nextFloat());
+			posX[i] = x;
+			posY[i] = y;
+			velX[i] = (float) Math.cos(angle) * v;
+			velY[i] = (float) Math.sin(angle) * v;
+			lifeTotal[i] = lifetime * (0.5f + 0.5f * random.nextFloat());
+			lifeLeft[i] = lifeTotal[i];
+			colorR[i] = color.r;
+			colorG[i] = color.g;
+			colorB[i] = color.b;
+		}
+	}
+
+	@Override
+	public void update(GameContainer container, StateBasedGame game, GameState<?> state, int delta) {
+		final float seconds = delta / 1000.0f;
+		int i = 0;
+		while (i < count) {
+			lifeLeft[i] -= delta;
+			if (lifeLeft[i] <= 0) {
+				// swap with last alive particle, keeps the data dense
+				count--;
+				move(count, i);
+				continue;
+			}
+			velY[i] += gravity * seconds;
+			posX[i] += velX[i] * seconds;
+			posY[i] += velY[i] * seconds;
+			i++;
+		}
+	}
+
+	/**
+	 * Move particle data from index src to dst
+	 *
+	 * @param src
+	 * @param dst
+	 */
+	private void move(final int src, final int dst) {
+		posX[dst] = posX[src];
+		posY[dst] = posY[src];
+		velX[dst] = velX[src];
+		velY[dst] = velY[src];
+		lifeLeft[dst] = lifeLeft[src];
+		lifeTotal[dst] = lifeTotal[src];
+		colorR[dst] = colorR[src];
+		colorG[dst] = colorG[src];
+		colorB[dst] = colorB[src];
+	}
+
+	@Override
+	public void render(Graphics g) {
+		if (count == 0)
+			return;
+		final SGL gl = Renderer.get();
+		final float half = particleSize / 2;
+		TextureImpl.bindNone();
+		gl.glBegin(SGL.GL_QUADS);
+		for (int i = 0; i < count; i++) {
+			gl.glColor4f(colorR[i], colorG[i], colorB[i], lifeLeft[i] / lifeTotal[i]);
+			gl.glVertex2f(posX[i] - half, posY[i] - half);
+			gl.glVertex2f(posX[i] + half, posY[i] - half);
+			gl.glVertex2f(posX[i] + half, posY[i] + half);
+			gl.glVertex2f(posX[i] - half, posY[i] + half);
+		}
+		gl.glEnd();
+		Color.white.bind();
+	}
+
+	/**
+	 * Remove all particles
+	 */
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * Returns the amount of particles currently alive
+	 *
+	 * @return int alive particles
+	 */
+	public int getActiveCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the amount of particles dropped due to the capacity limit
+	 *
+	 * @return long dropped particles
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the maximum amount of particles alive at the same time
+	 *
+	 * @return int capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -115,6 +115,6 @@ public class BlockSetter extends GUIElement {
 	 *            the map to read from
 	 */
 	public void readMap(Map map) {
-		blockValue = map.getMap().get(column).get(row);
+		blockValue = map.getBlock(column, row);
 	}
 }
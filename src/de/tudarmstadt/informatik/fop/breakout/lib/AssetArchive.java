@@ -0,0 +1,230 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageData.Format;
+import org.newdawn.slick.util.ResourceLocation;
+
+/**
+ * Packed asset archive, read through one memory mapped file<br>
+ * Layout (big endian):
+ *
+ * <pre>
+ * int magic, int version, int entries
+ * per entry: short name length, name (UTF-8), byte type, long offset, int length
+ *            for decoded images additionally: byte format, int width, int height, int texWidth, int texHeight
+ * payloads, each aligned to {@link #ALIGNMENT}
+ * </pre>
+ *
+ * Registered as Slick ResourceLocation, so every Slick loader reads packed
+ * files transparently.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AssetArchive implements ResourceLocation {
+	public static final int MAGIC = 0x42504b31; // "BPK1"
+	public static final int VERSION = 1;
+	public static final int ALIGNMENT = 16;
+
+	public static final byte TYPE_FILE = 0;
+	public static final byte TYPE_DECODED_IMAGE = 1;
+
+	private final File file;
+	private final MappedByteBuffer buffer;
+	private final HashMap<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Opens the archive
+	 *
+	 * @param file
+	 *            Archive file
+	 * @throws IOException
+	 *             on read errors or an invalid archive
+	 */
+	public AssetArchive(final File file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			// the mapping stays valid after closing the channel
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		readIndex();
+	}
+
+	/**
+	 * Read the index of the archive
+	 *
+	 * @throws IOException
+	 *             on invalid archives
+	 */
+	private void readIndex() throws IOException {
+		ByteBuffer in = buffer.duplicate();
+		try {
+			if (in.getInt() != MAGIC)
+				throw new IOException("Not an asset archive: " + file);
+			int version = in.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported asset archive version " + version + ": " + file);
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				byte[] name = new byte[in.getShort() & 0xFFFF];
+				in.get(name);
+				Entry e = new Entry();
+				e.type = in.get();
+				e.offset = in.getLong();
+				e.length = in.getInt();
+				if (e.type == TYPE_DECODED_IMAGE) {
+					e.format = Format.values()[in.get()];
+					e.width = in.getInt();
+					e.height = in.getInt();
+					e.texWidth = in.getInt();
+					e.texHeight = in.getInt();
+				}
+				if (e.offset < 0 || e.offset + e.length > buffer.capacity())
+					throw new IOException("Asset archive entry out of bounds: " + file);
+				entries.put(new String(name, StandardCharsets.UTF_8), e);
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed asset archive: " + file, e);
+		}
+	}
+
+	/**
+	 * Drop all entries whose loose file is newer than the archive<br>
+	 * Keeps edited assets from being hidden by a stale archive. Call before
+	 * the archive is shared with other threads.
+	 *
+	 * @param baseDir
+	 *            Directory the asset paths are relative to
+	 * @return ArrayList<String> paths of the dropped entries
+	 */
+	public ArrayList<String> dropOutdated(final File baseDir) {
+		ArrayList<String> dropped = new ArrayList<>();
+		long archiveModified = file.lastModified();
+		Iterator<String> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			String path = it.next();
+			if (new File(baseDir, path).lastModified() > archiveModified) {
+				it.remove();
+				dropped.add(path);
+			}
+		}
+		return dropped;
+	}
+
+	/**
+	 * Returns whether the archive contains the specified asset
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return true if contained
+	 */
+	public boolean contains(final String path) {
+		return entries.containsKey(normalize(path));
+	}
+
+	/**
+	 * Returns whether the asset is stored as decoded image
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return true for decoded images
+	 */
+	public boolean isDecodedImage(final String path) {
+		Entry e = entries.get(normalize(path));
+		return e != null && e.type == TYPE_DECODED_IMAGE;
+	}
+
+	/**
+	 * Returns a read only slice of the asset data, without copying
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return ByteBuffer or null if not contained
+	 */
+	public ByteBuffer getSlice(final String path) {
+		Entry e = entries.get(normalize(path));
+		if (e == null)
+			return null;
+		ByteBuffer slice = buffer.duplicate();
+		slice.position((int) e.offset);
+		slice.limit((int) e.offset + e.length);
+		return slice.slice();
+	}
+
+	/**
+	 * Returns the image data of a decoded image, ready for upload
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return ImageData or null if not contained as decoded image
+	 */
+	public ImageData getImageData(final String path) {
+		Entry e = entries.get(normalize(path));
+		if (e == null || e.type != TYPE_DECODED_IMAGE)
+			return null;
+		return new RawImageData(e.format, e.width, e.height, e.texWidth, e.texHeight, getSlice(path));
+	}
+
+	/**
+	 * Returns the paths of all contained assets
+	 *
+	 * @return Set<String> asset paths
+	 */
+	public Set<String> getPaths() {
+		return entries.keySet();
+	}
+
+	@Override
+	public InputStream getResourceAsStream(String ref) {
+		Entry e = entries.get(normalize(ref));
+		if (e == null || e.type != TYPE_FILE)
+			return null;
+		return new ByteBufferInputStream(getSlice(ref));
+	}
+
+	@Override
+	public URL getResource(String ref) {
+		return null; // mapped data has no URL
+	}
+
+	/**
+	 * Normalize the path to the archive format
+	 *
+	 * @param path
+	 * @return path with forward slashes and without leading slash
+	 */
+	public static String normalize(final String path) {
+		String p = path.replace('\\', '/');
+		while (p.startsWith("/") || p.startsWith("./"))
+			p = p.substring(p.startsWith("/") ? 1 : 2);
+		return p;
+	}
+
+	/**
+	 * Archive index entry
+	 */
+	private static class Entry {
+		private byte type;
+		private long offset;
+		private int length;
+		private Format format;
+		private int width;
+		private int height;
+		private int texWidth;
+		private int texHeight;
+	}
+}
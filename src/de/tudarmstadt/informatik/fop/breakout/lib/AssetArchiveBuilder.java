@@ -0,0 +1,227 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+
+/**
+ * Tool to build an {@link AssetArchive} from asset folders<br>
+ * Usage: <code>AssetArchiveBuilder [-decode] output.pak dir...</code><br>
+ * With -decode images are stored decoded, ready for the texture upload.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AssetArchiveBuilder {
+	private final static Logger logger = LogManager.getLogger();
+
+	private final ArrayList<Item> items = new ArrayList<>();
+	private final boolean decodeImages;
+
+	/**
+	 * Command line entry point
+	 *
+	 * @param args
+	 *            [-decode] output dir...
+	 */
+	public static void main(String[] args) {
+		boolean decode = args.length > 0 && args[0].equals("-decode");
+		int first = decode ? 1 : 0;
+		if (args.length - first < 2) {
+			System.err.println("Usage: AssetArchiveBuilder [-decode] output.pak dir...");
+			System.exit(1);
+		}
+		AssetArchiveBuilder builder = new AssetArchiveBuilder(decode);
+		try {
+			for (String dir : Arrays.copyOfRange(args, first + 1, args.length))
+				builder.addDirectory(new File(dir));
+			builder.write(new File(args[first]));
+			logger.info("Packed {} assets into {}", builder.items.size(), args[first]);
+		} catch (IOException e) {
+			logger.error("Unable to build asset archive: ", e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates a new AssetArchiveBuilder
+	 *
+	 * @param decodeImages
+	 *            Store images decoded
+	 */
+	public AssetArchiveBuilder(final boolean decodeImages) {
+		this.decodeImages = decodeImages;
+	}
+
+	/**
+	 * Add all files in the directory, recursively<br>
+	 * Files are named relative to the parent of the directory, e.g.
+	 * images/ball.png for /home/x/fop/images
+	 *
+	 * @param dir
+	 *            Asset directory
+	 * @throws IOException
+	 */
+	public void addDirectory(final File dir) throws IOException {
+		File base = dir.getAbsoluteFile().toPath().normalize().toFile().getParentFile();
+		addDirectory(base == null ? dir.getAbsoluteFile() : base, dir);
+	}
+
+	/**
+	 * Add all files in the directory, recursively
+	 *
+	 * @param base
+	 *            Directory the names are relative to
+	 * @param dir
+	 *            Asset directory
+	 * @throws IOException
+	 */
+	private void addDirectory(final File base, final File dir) throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null)
+			throw new IOException("Not a directory: " + dir);
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.isDirectory())
+				addDirectory(base, f);
+			else
+				addFile(AssetArchive.normalize(base.toPath().relativize(f.getAbsoluteFile().toPath().normalize())
+						.toString()), f);
+		}
+	}
+
+	/**
+	 * Add a single file
+	 *
+	 * @param name
+	 *            Asset path inside the archive
+	 * @param file
+	 *            File to add
+	 * @throws IOException
+	 */
+	public void addFile(final String name, final File file) throws IOException {
+		Item item = new Item(name);
+		String lower = name.toLowerCase();
+		if (decodeImages && (lower.endsWith(".png") || lower.endsWith(".tga"))) {
+			try (InputStream in = new FileInputStream(file)) {
+				LoadableImageData image = ImageDataFactory.getImageDataFor(name);
+				image.loadImage(in);
+				item.type = AssetArchive.TYPE_DECODED_IMAGE;
+				item.image = image;
+				item.data = toArray(image);
+			}
+		} else {
+			item.type = AssetArchive.TYPE_FILE;
+			item.data = Files.readAllBytes(file.toPath());
+		}
+		items.add(item);
+	}
+
+	/**
+	 * Returns the pixel data of the decoded image
+	 *
+	 * @param image
+	 * @return byte[] pixel data including the texture padding
+	 */
+	private static byte[] toArray(final ImageData image) {
+		ByteBuffer buffer = image.getImageBufferData().duplicate();
+		buffer.rewind();
+		byte[] data = new byte[RawImageData.getDataSize(image.getFormat(), image.getTexWidth(),
+				image.getTexHeight())];
+		buffer.get(data);
+		return data;
+	}
+
+	/**
+	 * Write the archive<br>
+	 * Writes to a temporary file first, replacing the target when done
+	 *
+	 * @param output
+	 *            Archive file
+	 * @throws IOException
+	 */
+	public void write(final File output) throws IOException {
+		long indexSize = 12;
+		for (Item item : items) {
+			indexSize += 2 + item.name.getBytes(StandardCharsets.UTF_8).length + 1 + 8 + 4;
+			if (item.type == AssetArchive.TYPE_DECODED_IMAGE)
+				indexSize += 1 + 4 * 4;
+		}
+		long offset = align(indexSize);
+		for (Item item : items) {
+			item.offset = offset;
+			offset = align(offset + item.data.length);
+		}
+
+		File tmp = new File(output.getAbsolutePath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(AssetArchive.MAGIC);
+			out.writeInt(AssetArchive.VERSION);
+			out.writeInt(items.size());
+			for (Item item : items) {
+				byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeByte(item.type);
+				out.writeLong(item.offset);
+				out.writeInt(item.data.length);
+				if (item.type == AssetArchive.TYPE_DECODED_IMAGE) {
+					out.writeByte(item.image.getFormat().ordinal());
+					out.writeInt(item.image.getWidth());
+					out.writeInt(item.image.getHeight());
+					out.writeInt(item.image.getTexWidth());
+					out.writeInt(item.image.getTexHeight());
+				}
+			}
+			long pos = indexSize;
+			for (Item item : items) {
+				for (; pos < item.offset; pos++)
+					out.writeByte(0);
+				out.write(item.data);
+				pos += item.data.length;
+			}
+		}
+		Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Align the offset to {@link AssetArchive#ALIGNMENT}
+	 *
+	 * @param offset
+	 * @return aligned offset
+	 */
+	private static long align(final long offset) {
+		return (offset + AssetArchive.ALIGNMENT - 1) / AssetArchive.ALIGNMENT * AssetArchive.ALIGNMENT;
+	}
+
+	/**
+	 * Archive entry to write
+	 */
+	private static class Item {
+		private final String name;
+		private byte type;
+		private long offset;
+		private byte[] data;
+		private ImageData image;
+
+		private Item(final String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Memory budgeted asset cache<br>
+ * Assets are reference counted, unreferenced assets are evicted in least
+ * recently used order as soon as the byte budget is exceeded.<br>
+ * Every key is mapped to a stable integer handle, hot paths should resolve
+ * their handles once and use the handle based methods, which index an array
+ * instead of hashing the key.<br>
+ * Thread safe, the releaser is called by the thread causing the eviction.
+ *
+ * @author Aron Heinecke
+ *
+ * @param <T>
+ *            Asset type
+ */
+public class AssetCache<T> {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private final HashMap<String, Integer> handles = new HashMap<>();
+	// indexed by handle, slots are never removed
+	private final ArrayList<Entry<T>> slots = new ArrayList<>();
+	private final Releaser<T> releaser;
+	private long budget;
+	private long usedBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long useCounter = 0;
+	private int size = 0;
+
+	/**
+	 * Creates a new AssetCache
+	 *
+	 * @param budget
+	 *            Byte budget
+	 * @param releaser
+	 *            Called for every evicted asset
+	 */
+	public AssetCache(final long budget, final Releaser<T> releaser) {
+		this.budget = budget;
+		this.releaser = releaser;
+	}
+
+	/**
+	 * Returns the handle of the key, creating it if required<br>
+	 * Handles stay valid for the lifetime of the cache, also for evicted
+	 * assets
+	 *
+	 * @param key
+	 *            Asset key
+	 * @return int handle
+	 */
+	public synchronized int handle(final String key) {
+		Integer handle = handles.get(key);
+		if (handle == null) {
+			handle = slots.size();
+			slots.add(new Entry<T>(key));
+			handles.put(key, handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Returns the key of the handle
+	 *
+	 * @param handle
+	 *            Asset handle
+	 * @return String key
+	 */
+	public synchronized String getKey(final int handle) {
+		return slots.get(handle).key;
+	}
+
+	/**
+	 * Returns the asset and increments its reference count
+	 *
+	 * @param key
+	 *            Asset key
+	 * @return asset or null if not cached
+	 */
+	public synchronized T acquire(final String key) {
+		return acquire(handle(key));
+	}
+
+	/**
+	 * Returns the asset and increments its reference count
+	 *
+	 * @param handle
+	 *            Asset handle
+	 * @return asset or null if not cached
+	 */
+	public synchronized T acquire(final int handle) {
+		Entry<T> e = slots.get(handle);
+		if (e.asset == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		e.refs++;
+		e.lastUse = useCounter++;
+		return e.asset;
+	}
+
+	/**
+	 * Returns the reference count of the asset
+	 *
+	 * @param handle
+	 *            Asset handle
+	 * @return int references, 0 if not cached
+	 */
+	public synchronized int getRefs(final int handle) {
+		Entry<T> e = slots.get(handle);
+		return e.asset == null ? 0 : e.refs;
+	}
+
+	/**
+	 * Returns the asset without changing its reference count
+	 *
+	 * @param key
+	 *            Asset key
+	 * @return asset or null if not cached
+	 */
+	public synchronized T peek(final String key) {
+		Integer handle = handles.get(key);
+		return handle == null ? null : slots.get(handle).asset;
+	}
+
+	/**
+	 * Returns whether the asset is cached
+	 *
+	 * @param key
+	 *            Asset key
+	 * @return true if cached
+	 */
+	public synchronized boolean contains(final String key) {
+		return peek(key) != null;
+	}
+
+	/**
+	 * Returns whether the asset is cached
+	 *
+	 * @param handle
+	 *            Asset handle
+	 * @return true if cached
+	 */
+	public synchronized boolean contains(final int handle) {
+		return slots.get(handle).asset != null;
+	}
+
+	/**
+	 * Add an asset to the cache<br>
+	 * Might evict other unreferenced assets
+	 *
+	 * @param key
+	 *            Asset key
+	 * @param asset
+	 *            Asset
+	 * @param bytes
+	 *            Estimated memory used by the asset
+	 * @param refs
+	 *            Initial reference count
+	 */
+	public synchronized void put(final String key, final T asset, final long bytes, final int refs) {
+		put(handle(key), asset, bytes, refs);
+	}
+
+	/**
+	 * Add an asset to the cache<br>
+	 * Might evict other unreferenced assets
+	 *
+	 * @param handle
+	 *            Asset handle
+	 * @param asset
+	 *            Asset
+	 * @param bytes
+	 *            Estimated memory used by the asset
+	 * @param refs
+	 *            Initial reference count
+	 */
+	public synchronized void put(final int handle, final T asset, final long bytes, final int refs) {
+		Entry<T> e = slots.get(handle);
+		if (e.asset != null) { // replaced, keep references of the old asset
+			usedBytes -= e.bytes;
+			if (e.asset != asset)
+				releaser.release(e.asset);
+		} else {
+			e.refs = 0;
+			size++;
+		}
+		e.asset = asset;
+		e.bytes = bytes;
+		e.refs += refs;
+		e.lastUse = useCounter++;
+		usedBytes += bytes;
+		trim();
+	}
+
+	/**
+	 * Decrement the reference count of the asset<br>
+	 * Unreferenced assets stay cached until the budget is exceeded
+	 *
+	 * @param key
+	 *            Asset key
+	 */
+	public synchronized void release(final String key) {
+		Integer handle = handles.get(key);
+		if (handle != null)
+			release(handle);
+	}
+
+	/**
+	 * Decrement the reference count of the asset<br>
+	 * Unreferenced assets stay cached until the budget is exceeded
+	 *
+	 * @param handle
+	 *            Asset handle
+	 */
+	public synchronized void release(final int handle) {
+		Entry<T> e = slots.get(handle);
+		if (e.asset == null)
+			return;
+		if (e.refs > 0)
+			e.refs--;
+		else
+			logger.warn("Release of unreferenced asset {}", e.key);
+		e.lastUse = useCounter++;
+		trim();
+	}
+
+	/**
+	 * Evict unreferenced assets until the budget is met
+	 */
+	private void trim() {
+		if (usedBytes <= budget)
+			return;
+		ArrayList<Entry<T>> candidates = new ArrayList<>();
+		for (Entry<T> e : slots) {
+			if (e.asset != null && e.refs == 0)
+				candidates.add(e);
+		}
+		Collections.sort(candidates, new Comparator<Entry<T>>() {
+			@Override
+			public int compare(Entry<T> o1, Entry<T> o2) {
+				return Long.compare(o1.lastUse, o2.lastUse);
+			}
+		});
+		for (int i = 0; usedBytes > budget && i < candidates.size(); i++) {
+			Entry<T> e = candidates.get(i);
+			T asset = e.asset;
+			usedBytes -= e.bytes;
+			e.asset = null;
+			e.bytes = 0;
+			size--;
+			evictions++;
+			releaser.release(asset);
+		}
+	}
+
+	/**
+	 * Set the byte budget, evicting assets if required
+	 *
+	 * @param budget
+	 *            Byte budget
+	 */
+	public synchronized void setBudget(final long budget) {
+		this.budget = budget;
+		trim();
+	}
+
+	/**
+	 * Returns the byte budget
+	 *
+	 * @return long budget
+	 */
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Returns the estimated memory used by all cached assets
+	 *
+	 * @return long used bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Returns the amount of acquire calls finding their asset
+	 *
+	 * @return long hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the amount of acquire calls not finding their asset
+	 *
+	 * @return long misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the amount of evicted assets
+	 *
+	 * @return long evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the amount of cached assets
+	 *
+	 * @return int size
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Called for assets leaving the cache, to free their resources
+	 *
+	 * @author Aron Heinecke
+	 *
+	 * @param <T>
+	 *            Asset type
+	 */
+	public interface Releaser<T> {
+		/**
+		 * Free the resources of the asset
+		 *
+		 * @param asset
+		 *            Asset to release
+		 */
+		public void release(T asset);
+	}
+
+	/**
+	 * Cache slot of one key
+	 *
+	 * @param <T>
+	 *            Asset type
+	 */
+	private static class Entry<T> {
+		private final String key;
+		// null if not cached
+		private T asset = null;
+		private long bytes = 0;
+		private int refs = 0;
+		private long lastUse = 0;
+
+		private Entry(final String key) {
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Background asset loader<br>
+ * Reads & decodes assets on a thread pool. Everything requiring the GL or AL
+ * context has to be done by the caller on the render thread.<br>
+ * Thread safe, parallel requests for the same asset decode it only once.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AssetLoader {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private final ExecutorService pool;
+	private final ConcurrentHashMap<String, Future<Decoded>> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger requested = new AtomicInteger();
+	private volatile AssetArchive archive = null;
+	private volatile TextureCache textureCache = null;
+
+	/**
+	 * Creates a new AssetLoader with one thread per core
+	 */
+	public AssetLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a new AssetLoader
+	 *
+	 * @param threads
+	 *            Amount of decoder threads
+	 */
+	public AssetLoader(final int threads) {
+		final AtomicInteger counter = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "asset-loader-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Set the archive to take pre-decoded images and sounds from
+	 *
+	 * @param archive
+	 *            AssetArchive or null
+	 */
+	public void setArchive(final AssetArchive archive) {
+		this.archive = archive;
+	}
+
+	/**
+	 * Set the disk cache to take decoded images from
+	 *
+	 * @param textureCache
+	 *            TextureCache or null
+	 */
+	public void setTextureCache(final TextureCache textureCache) {
+		this.textureCache = textureCache;
+	}
+
+	/**
+	 * Request the asset to be decoded in the background<br>
+	 * Requests for already pending assets return the pending future
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return Future of the decoded asset
+	 */
+	public Future<Decoded> request(final String path) {
+		return pending.computeIfAbsent(path, p -> {
+			requested.incrementAndGet();
+			return pool.submit(() -> decode(p));
+		});
+	}
+
+	/**
+	 * Returns whether the asset is requested but not yet taken
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return true if pending
+	 */
+	public boolean isPending(final String path) {
+		return pending.containsKey(path);
+	}
+
+	/**
+	 * Returns whether the asset can be taken without waiting
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return true if decoded or not pending
+	 */
+	public boolean isDone(final String path) {
+		Future<Decoded> future = pending.get(path);
+		return future == null || future.isDone();
+	}
+
+	/**
+	 * Wait for the asset to be decoded and take it
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return Decoded asset or null if it wasn't requested
+	 */
+	public Decoded take(final String path) {
+		Future<Decoded> future = pending.remove(path);
+		if (future == null)
+			return null;
+		return get(path, future);
+	}
+
+	/**
+	 * Take all assets that finished decoding
+	 *
+	 * @param max
+	 *            maximum amount of assets to take
+	 * @return ArrayList<Decoded> finished assets
+	 */
+	public ArrayList<Decoded> takeFinished(final int max) {
+		ArrayList<Decoded> list = new ArrayList<>();
+		for (java.util.Map.Entry<String, Future<Decoded>> entry : pending.entrySet()) {
+			if (list.size() >= max)
+				break;
+			// only the thread removing the future takes it
+			if (entry.getValue().isDone() && pending.remove(entry.getKey(), entry.getValue()))
+				list.add(get(entry.getKey(), entry.getValue()));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the result of the future
+	 *
+	 * @param path
+	 * @param future
+	 * @return Decoded, with error set on failure
+	 */
+	private Decoded get(final String path, final Future<Decoded> future) {
+		Decoded d = new Decoded(path);
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			d.error = e;
+		} catch (ExecutionException e) {
+			d.error = e;
+		}
+		return d;
+	}
+
+	/**
+	 * Returns the loading progress of all requests so far
+	 *
+	 * @return float between 0 and 1
+	 */
+	public float getProgress() {
+		int total = requested.get();
+		if (total == 0)
+			return 1;
+		return Math.max(0, total - pending.size()) / (float) total;
+	}
+
+	/**
+	 * Returns whether any requested asset is not yet taken
+	 *
+	 * @return true if loading
+	 */
+	public boolean isLoading() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Stop all decoder threads
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Decode the specified asset, runs on a decoder thread
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return Decoded
+	 */
+	private Decoded decode(final String path) {
+		Decoded d = new Decoded(path);
+		if (archive != null && archive.contains(path)) {
+			if (archive.isDecodedImage(path)) {
+				d.image = archive.getImageData(path);
+				return d;
+			} else if (isSound(path)) {
+				// mapped, nothing to read
+				d.sound = archive.getResourceAsStream(path);
+				return d;
+			}
+		}
+		if (textureCache != null && !isSound(path)) {
+			try {
+				d.image = textureCache.load(path);
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Unable to decode asset {}", path, e);
+				d.error = e;
+			}
+			return d;
+		}
+		try (InputStream in = ResourceLoader.getResourceAsStream(path)) {
+			if (isSound(path)) {
+				d.sound = new ByteArrayInputStream(readFully(in));
+			} else {
+				LoadableImageData image = ImageDataFactory.getImageDataFor(path);
+				image.loadImage(in);
+				d.image = image;
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Unable to decode asset {}", path, e);
+			d.error = e;
+		}
+		return d;
+	}
+
+	/**
+	 * Returns whether the path points to a sound
+	 *
+	 * @param path
+	 *            Asset path
+	 * @return true for sounds
+	 */
+	public static boolean isSound(final String path) {
+		String lower = path.toLowerCase();
+		return lower.endsWith(".wav") || lower.endsWith(".ogg") || lower.endsWith(".aif");
+	}
+
+	/**
+	 * Read the stream into a byte array
+	 *
+	 * @param in
+	 * @return byte[] data
+	 * @throws IOException
+	 */
+	static byte[] readFully(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decoded asset, ready for upload
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public static class Decoded {
+		public final String path;
+		// decoded image data, null for sounds
+		public ImageData image;
+		// sound file content, null for images
+		public InputStream sound;
+		// error while decoding, null on success
+		public Exception error;
+
+		/**
+		 * Creates a new Decoded asset
+		 *
+		 * @param path
+		 *            Asset path
+		 */
+		private Decoded(final String path) {
+			this.path = path;
+		}
+	}
+}
@@ -1,29 +1,106 @@
 package de.tudarmstadt.informatik.fop.breakout.lib;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import org.apache.logging.log4j.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.newdawn.slick.Image;
 import org.newdawn.slick.SlickException;
-import org.newdawn.slick.Sound;
+import org.newdawn.slick.util.ClasspathLocation;
+import org.newdawn.slick.util.FileSystemLocation;
+import org.newdawn.slick.util.ResourceLoader;
 
-import de.tudarmstadt.informatik.fop.breakout.ui.Breakout;
+import de.tudarmstadt.informatik.fop.breakout.lib.AssetLoader.Decoded;
 
 /**
- * AssetManager for Slick Images to load them only once
+ * AssetManager for Slick Images and Sounds to load them only once<br>
+ * Assets can be preloaded in the background, their upload has to be driven by
+ * calling {@link #update(long)} on the render thread.<br>
+ * Images are reference counted, every {@link #getImg(String)} has to be
+ * matched by a {@link #releaseImg(String)} once the image isn't used anymore.
+ * Unreferenced images are evicted when the memory budget is exceeded.<br>
+ * Hot paths should resolve image handles and sound ids once and use the
+ * integer based methods.<br>
+ * Thread safe. Texture uploads and evictions only happen on the render thread
+ * set by {@link #setRenderThread(Thread)}, requests from other threads are
+ * queued and handled by {@link #update(long)}.
  * 
  * @author Simon Kohaut, Aron Heinecke
  */
 public class AssetManager {
 
-	private Logger logger = LogManager.getLogger(Breakout.class);
+	private final Logger logger = LogManager.getLogger(this);
 
-	private final HashMap<String, Image> images = new HashMap<String, Image>();
-	private final HashMap<String, Sound> sounds = new HashMap<>();
-	private boolean testMode = false;
+	public static final long DEFAULT_TEXTURE_BUDGET = 64 * 1024 * 1024;
+
+	private final AssetCache<Image> images = new AssetCache<>(DEFAULT_TEXTURE_BUDGET, new AssetCache.Releaser<Image>() {
+		@Override
+		public void release(Image asset) {
+			try {
+				asset.destroy();
+			} catch (SlickException e) {
+				logger.warn("Unable to release image", e);
+			}
+		}
+	});
+	private final SoundManager sounds = new SoundManager();
+	private final AssetLoader loader = new AssetLoader();
+	// image loads & releases of other threads, handled on the render thread
+	private final ConcurrentLinkedQueue<PendingImage> pendingImages = new ConcurrentLinkedQueue<>();
+	private final ConcurrentLinkedQueue<Integer> pendingReleases = new ConcurrentLinkedQueue<>();
+	private volatile Thread renderThread = null;
+	private volatile AssetArchive archive = null;
+	private volatile TextureCache textureCache = null;
+	private volatile boolean testMode = false;
+	// references by image handle in test mode, where no image is loaded
+	private final ConcurrentHashMap<Integer, Integer> testRefs = new ConcurrentHashMap<>();
+
+	/**
+	 * Set the thread owning the GL context<br>
+	 * Without render thread every caller is assumed to own the context
+	 * 
+	 * @param thread
+	 *            Render thread
+	 */
+	public void setRenderThread(final Thread thread) {
+		renderThread = thread;
+	}
+
+	/**
+	 * Returns whether the current thread owns the GL context
+	 * 
+	 * @return true on the render thread
+	 */
+	private boolean isRenderThread() {
+		Thread t = renderThread;
+		return t == null || t == Thread.currentThread();
+	}
 
 	/**
-	 * Get the Image at the specified path
+	 * Returns the handle of the Image at the specified path<br>
+	 * To be resolved once and used with {@link #getImg(int)} on hot paths
+	 * 
+	 * @param path
+	 *            The path to the Image
+	 * @return int handle
+	 */
+	public int getImageHandle(final String path) {
+		return images.handle(path);
+	}
+
+	/**
+	 * Get the Image at the specified path<br>
+	 * Waits for the image if it's currently preloaded. Increments the reference
+	 * count of the image.
 	 * 
 	 * @param path
 	 *            The path to the Image
@@ -31,36 +108,367 @@ public class AssetManager {
 	 * @throws SlickException
 	 */
 	public Image getImg(final String path) throws SlickException {
-		if (testMode)
+		return getImg(images.handle(path));
+	}
+
+	/**
+	 * Get the Image of the specified handle<br>
+	 * Waits for the image if it's currently preloaded. Increments the reference
+	 * count of the image.<br>
+	 * Called off the render thread, uncached images are uploaded by the next
+	 * {@link #update(long)}, which the render thread must not wait for.
+	 * 
+	 * @param handle
+	 *            Handle from {@link #getImageHandle(String)}
+	 * @return The Image of the handle
+	 * @throws SlickException
+	 */
+	public Image getImg(final int handle) throws SlickException {
+		if (testMode) {
+			testRefs.merge(handle, 1, Integer::sum);
 			return null;
+		}
 
-		if (images.containsKey(path))
-			return images.get(path);
+		Image img = images.acquire(handle);
+		if (img != null)
+			return img;
+		if (!isRenderThread())
+			return waitFor(loadImage(handle));
 
-		images.put(path, new Image(path));
-		return images.get(path);
+		final String path = images.getKey(handle);
+		if (takePending(path)) {
+			img = images.acquire(handle);
+			if (img != null)
+				return img;
+		}
+		if (archive != null && archive.isDecodedImage(path))
+			img = new Image(archive.getImageData(path));
+		else if (textureCache != null)
+			img = loadCached(path);
+		else
+			img = new Image(path);
+		images.put(handle, img, getSize(img), 1);
+		return img;
 	}
 
 	/**
-	 * Play a sound
+	 * Load the image at the specified path, usable from any thread<br>
+	 * The image is decoded in the background and uploaded on the render
+	 * thread. Increments the reference count of the image once done.
 	 * 
 	 * @param path
-	 *            the path where the sound is stored
+	 *            The path to the Image
+	 * @return Future of the Image
 	 */
-	public void playSound(final String path) {
-		if (testMode)
+	public Future<Image> loadImage(final String path) {
+		return loadImage(images.handle(path));
+	}
+
+	/**
+	 * Load the image of the specified handle, usable from any thread<br>
+	 * See {@link #loadImage(String)}
+	 * 
+	 * @param handle
+	 *            Handle from {@link #getImageHandle(String)}
+	 * @return Future of the Image
+	 */
+	public Future<Image> loadImage(final int handle) {
+		CompletableFuture<Image> future = new CompletableFuture<>();
+		if (testMode || isRenderThread()) {
+			try {
+				future.complete(getImg(handle));
+			} catch (SlickException | RuntimeException e) {
+				future.completeExceptionally(e);
+			}
+			return future;
+		}
+		Image img = images.acquire(handle);
+		if (img != null) {
+			future.complete(img);
+		} else {
+			loader.request(images.getKey(handle));
+			pendingImages.add(new PendingImage(handle, future));
+		}
+		return future;
+	}
+
+	/**
+	 * Wait for the image future
+	 * 
+	 * @param future
+	 * @return Image
+	 * @throws SlickException
+	 */
+	private Image waitFor(final Future<Image> future) throws SlickException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SlickException("Interrupted while waiting for image", e);
+		} catch (ExecutionException e) {
+			throw new SlickException("Failed to load image", e.getCause());
+		}
+	}
+
+	/**
+	 * Load the image through the texture cache
+	 * 
+	 * @param path
+	 *            The path to the Image
+	 * @return Image
+	 * @throws SlickException
+	 */
+	private Image loadCached(final String path) throws SlickException {
+		try {
+			return new Image(textureCache.load(path));
+		} catch (IOException e) {
+			throw new SlickException("Failed to load image from " + path, e);
+		}
+	}
+
+	/**
+	 * Release a reference on the image at the specified path<br>
+	 * To be called for every {@link #getImg(String)} call when the image is
+	 * no longer used
+	 * 
+	 * @param path
+	 *            The path to the Image
+	 */
+	public void releaseImg(final String path) {
+		releaseImg(images.handle(path));
+	}
+
+	/**
+	 * Release a reference on the image of the specified handle<br>
+	 * To be called for every {@link #getImg(int)} call when the image is no
+	 * longer used
+	 * 
+	 * @param handle
+	 *            Handle from {@link #getImageHandle(String)}
+	 */
+	public void releaseImg(final int handle) {
+		if (testMode) {
+			testRefs.merge(handle, -1, Integer::sum);
 			return;
+		}
+
+		if (isRenderThread())
+			images.release(handle);
+		else
+			pendingReleases.add(handle); // might evict, has to be done on the GL thread
+	}
 
-		if (sounds.containsKey(path))
-			sounds.get(path).play();
+	/**
+	 * Returns the references held on the image at the specified path<br>
+	 * Also counted in test mode, where surplus releases make it negative
+	 * 
+	 * @param path
+	 *            The path to the Image
+	 * @return int references
+	 */
+	public int getReferences(final String path) {
+		int handle = images.handle(path);
+		if (testMode)
+			return testRefs.getOrDefault(handle, 0);
+		return images.getRefs(handle);
+	}
 
+	/**
+	 * Returns the estimated texture memory of the image
+	 * 
+	 * @param img
+	 * @return long size in bytes
+	 */
+	private long getSize(final Image img) {
+		return 4L * img.getTexture().getTextureWidth() * img.getTexture().getTextureHeight();
+	}
+
+	/**
+	 * Open the packed asset archive, if it exists<br>
+	 * Assets contained in the archive are preferred over loose files
+	 * 
+	 * @param file
+	 *            Archive file
+	 */
+	public void openArchive(final File file) {
+		if (!file.exists())
+			return;
 		try {
-			sounds.put(path, new Sound(path));
-			sounds.get(path).play();
-		} catch (SlickException e) {
-			logger.warn("Unable to play Sound", e);
+			archive = new AssetArchive(file);
+			for (String path : archive.dropOutdated(new File(".")))
+				logger.warn("Loose file {} is newer than the asset archive, using it instead", path);
+			ResourceLoader.removeAllResourceLocations();
+			ResourceLoader.addResourceLocation(archive);
+			ResourceLoader.addResourceLocation(new ClasspathLocation());
+			ResourceLoader.addResourceLocation(new FileSystemLocation(new File(".")));
+			loader.setArchive(archive);
+			logger.info("Using asset archive {} with {} assets", file, archive.getPaths().size());
+		} catch (IOException e) {
+			logger.error("Unable to open asset archive: ", e);
+		}
+	}
+
+	/**
+	 * Enable the disk cache of decoded textures
+	 * 
+	 * @param dir
+	 *            Cache directory
+	 */
+	public void enableTextureCache(final File dir) {
+		if (testMode)
+			return;
+		textureCache = new TextureCache(dir);
+		loader.setTextureCache(textureCache);
+	}
+
+	/**
+	 * Preload the specified assets in the background<br>
+	 * Already loaded assets are skipped
+	 * 
+	 * @param paths
+	 *            Paths of images and sounds
+	 */
+	public void preload(final Collection<String> paths) {
+		if (testMode)
+			return;
+		for (String path : paths) {
+			if (!images.contains(path))
+				loader.request(path);
 		}
+	}
 
+	/**
+	 * Upload preloaded assets to the GPU / sound system<br>
+	 * Has to be called on the render thread, returns after the time budget is
+	 * exceeded. Handles image loads and releases of other threads first.
+	 * 
+	 * @param budgetMillis
+	 *            Time budget in milliseconds
+	 */
+	public void update(final long budgetMillis) {
+		Integer release;
+		while ((release = pendingReleases.poll()) != null)
+			images.release(release);
+		if (!pendingImages.isEmpty())
+			uploadPendingImages();
+		if (!loader.isLoading())
+			return;
+		final long end = System.currentTimeMillis() + budgetMillis;
+		do {
+			ArrayList<Decoded> finished = loader.takeFinished(1);
+			if (finished.isEmpty())
+				return;
+			upload(finished.get(0));
+		} while (System.currentTimeMillis() < end);
+	}
+
+	/**
+	 * Upload images requested by other threads, once decoded
+	 */
+	private void uploadPendingImages() {
+		Iterator<PendingImage> iter = pendingImages.iterator();
+		while (iter.hasNext()) {
+			PendingImage p = iter.next();
+			if (!loader.isDone(images.getKey(p.handle)))
+				continue;
+			iter.remove();
+			try {
+				p.future.complete(getImg(p.handle));
+			} catch (SlickException | RuntimeException e) {
+				p.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Wait for the asset if it's currently preloaded and upload it
+	 * 
+	 * @param path
+	 *            Asset path
+	 * @return true if the asset was pending
+	 */
+	private boolean takePending(final String path) {
+		if (!loader.isPending(path))
+			return false;
+		upload(loader.take(path));
+		return true;
+	}
+
+	/**
+	 * Upload a decoded asset
+	 * 
+	 * @param d
+	 *            Decoded asset
+	 */
+	private void upload(final Decoded d) {
+		if (d.error != null)
+			return; // loaded synchronously on request, reporting the error
+		if (d.image != null) {
+			if (!images.contains(d.path)) {
+				try {
+					Image img = new Image(d.image);
+					images.put(d.path, img, getSize(img), 0);
+				} catch (RuntimeException e) {
+					logger.warn("Unable to upload image {}", d.path, e);
+				}
+			}
+		} else if (d.sound != null) {
+			sounds.addBuffer(d.path, d.sound);
+		}
+	}
+
+	/**
+	 * Returns the progress of all preloads so far
+	 * 
+	 * @return float between 0 and 1
+	 */
+	public float getLoadProgress() {
+		return loader.getProgress();
+	}
+
+	/**
+	 * Returns whether preloaded assets are still pending
+	 * 
+	 * @return true if loading
+	 */
+	public boolean isLoading() {
+		return loader.isLoading() || !pendingImages.isEmpty();
+	}
+
+	/**
+	 * Returns the id of the sound at the specified path<br>
+	 * To be resolved once and used with {@link #playSound(int)} on hot paths
+	 * 
+	 * @param path
+	 *            the path where the sound is stored
+	 * @return int sound id
+	 */
+	public int getSoundId(final String path) {
+		return sounds.getSoundId(path);
+	}
+
+	/**
+	 * Play a sound
+	 * 
+	 * @param path
+	 *            the path where the sound is stored
+	 */
+	public void playSound(final String path) {
+		playSound(sounds.getSoundId(path));
+	}
+
+	/**
+	 * Play a sound
+	 * 
+	 * @param id
+	 *            Sound id from {@link #getSoundId(String)}
+	 */
+	public void playSound(final int id) {
+		if (testMode)
+			return;
+
+		takePendingSound(id);
+		sounds.play(id);
 	}
 
 	/**
@@ -73,16 +481,52 @@ public class AssetManager {
 		if (testMode)
 			return;
 
-		if (sounds.containsKey(path))
-			sounds.get(path).loop();
+		int id = sounds.getSoundId(path);
+		takePendingSound(id);
+		sounds.loop(id);
+	}
 
-		try {
-			sounds.put(path, new Sound(path));
-			sounds.get(path).loop();
-		} catch (SlickException e) {
-			logger.warn("Unable to play Sound", e);
-		}
+	/**
+	 * Wait for the sound if it's currently preloaded and upload it<br>
+	 * Only resolves the path while preloads are pending
+	 * 
+	 * @param id
+	 *            Sound id
+	 */
+	private void takePendingSound(final int id) {
+		if (loader.isLoading())
+			takePending(sounds.getCache().getKey(id));
+	}
 
+	/**
+	 * Returns the sound manager
+	 * 
+	 * @return the SoundManager
+	 */
+	public SoundManager getSoundManager() {
+		return sounds;
+	}
+
+	/**
+	 * Returns the image cache
+	 * 
+	 * @return AssetCache<Image>
+	 */
+	public AssetCache<Image> getImageCache() {
+		return images;
+	}
+
+	/**
+	 * Set the memory budgets for textures and sounds
+	 * 
+	 * @param textureBytes
+	 *            texture memory budget in bytes
+	 * @param audioBytes
+	 *            audio memory budget in bytes
+	 */
+	public void setMemoryBudget(final long textureBytes, final long audioBytes) {
+		images.setBudget(textureBytes);
+		sounds.getCache().setBudget(audioBytes);
 	}
 
 	/**
@@ -96,4 +540,16 @@ public class AssetManager {
 		testMode = flag;
 	}
 
+	/**
+	 * Image load requested off the render thread
+	 */
+	private static class PendingImage {
+		private final int handle;
+		private final CompletableFuture<Image> future;
+
+		private PendingImage(final int handle, final CompletableFuture<Image> future) {
+			this.handle = handle;
+			this.future = future;
+		}
+	}
 }
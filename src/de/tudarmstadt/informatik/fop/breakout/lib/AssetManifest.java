@@ -0,0 +1,109 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Asset manifest<br>
+ * List of all images and sounds, grouped by state or theme<br>
+ * A group starts with a line <code>[name]</code>, followed by one asset path
+ * per line. Lines starting with # are ignored.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AssetManifest {
+	private final static Logger logger = LogManager.getLogger();
+
+	private final LinkedHashMap<String, ArrayList<String>> groups = new LinkedHashMap<>();
+
+	/**
+	 * Load a manifest from file<br>
+	 * Returns an empty manifest if the file couldn't be read
+	 *
+	 * @param file
+	 *            manifest file
+	 * @return AssetManifest
+	 */
+	public static AssetManifest load(final File file) {
+		AssetManifest manifest = new AssetManifest();
+		String line;
+		String group = null;
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				if (line.startsWith("[") && line.endsWith("]")) {
+					group = line.substring(1, line.length() - 1);
+				} else if (group == null) {
+					logger.warn("Asset outside of group in manifest: {}", line);
+				} else {
+					manifest.add(group, line);
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Unable to read asset manifest: ", e);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Add an asset to the specified group
+	 *
+	 * @param group
+	 *            Group name
+	 * @param path
+	 *            Asset path
+	 */
+	public void add(final String group, final String path) {
+		ArrayList<String> list = groups.get(group);
+		if (list == null) {
+			list = new ArrayList<>();
+			groups.put(group, list);
+		}
+		list.add(path);
+	}
+
+	/**
+	 * Returns the assets of the specified group
+	 *
+	 * @param group
+	 *            Group name
+	 * @return ArrayList<String> asset paths, empty for unknown groups
+	 */
+	public ArrayList<String> getGroup(final String group) {
+		ArrayList<String> list = groups.get(group);
+		return list == null ? new ArrayList<>() : list;
+	}
+
+	/**
+	 * Returns the names of all groups
+	 *
+	 * @return Set<String> group names
+	 */
+	public Set<String> getGroups() {
+		return groups.keySet();
+	}
+
+	/**
+	 * Returns all assets of this manifest, without duplicates
+	 *
+	 * @return Set<String> asset paths in manifest order
+	 */
+	public Set<String> getAll() {
+		LinkedHashSet<String> all = new LinkedHashSet<>();
+		for (ArrayList<String> list : groups.values())
+			all.addAll(list);
+		return all;
+	}
+}
@@ -0,0 +1,285 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Atomic file writer<br>
+ * Writes into a temporary file next to the target through one reused
+ * buffer. On {@link #commit()} the data is synced to disk and the temporary
+ * file renamed over the target, so readers only ever see the old or the new
+ * file, never a truncated one. Closing without commit discards the data.<br>
+ * Used for maps, highscore snapshots, level cache entries & reports, see
+ * {@link #writeText(File, Map)} for text maps.<br>
+ * Not thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AtomicFileWriter implements Closeable {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+	private final Path target;
+	private final Path tmp;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private boolean closed = false;
+
+	/**
+	 * Creates a new AtomicFileWriter, opening a temporary file for the target
+	 *
+	 * @param target
+	 *            File to replace on commit
+	 * @throws IOException
+	 */
+	public AtomicFileWriter(final File target) throws IOException {
+		this.target = target.getAbsoluteFile().toPath();
+		this.tmp = createTempFile(this.target);
+		try {
+			channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Create a new temporary file next to the target<br>
+	 * Unlike {@link Files#createTempFile} this keeps the default permissions,
+	 * as the file replaces the target
+	 *
+	 * @param target
+	 * @return Path of the created file
+	 * @throws IOException
+	 */
+	private static Path createTempFile(final Path target) throws IOException {
+		while (true) {
+			Path path = target.resolveSibling(target.getFileName() + "." + ThreadLocalRandom.current().nextInt(
+					Integer.MAX_VALUE) + ".tmp");
+			try {
+				return Files.createFile(path);
+			} catch (FileAlreadyExistsException e) {
+				// try the next name
+			}
+		}
+	}
+
+	/**
+	 * Write the map in CSV text format, replacing the target atomically
+	 *
+	 * @param target
+	 *            File to replace
+	 * @param map
+	 *            Map to write
+	 * @throws IOException
+	 */
+	public static void writeText(final File target, final Map map) throws IOException {
+		MapGrid grid = map.getGrid();
+		try (AtomicFileWriter writer = new AtomicFileWriter(target)) {
+			for (int y = 0; y < grid.getHeight(); y++) {
+				for (int x = 0; x < grid.getWidth(); x++) {
+					if (x > 0)
+						writer.write(',');
+					writer.writeInt(grid.get(x, y));
+				}
+				writer.newLine();
+			}
+			// custom data, velocity,theme,gravity,
+			writer.write(';');
+			writer.newLine();
+			writer.writeAscii(Float.toString(map.getBallVelocity()));
+			writer.write(',');
+			writer.writeInt(map.getTheme());
+			writer.write(',');
+			writer.writeAscii(Float.toString(map.getGravity()));
+			writer.write(',');
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Write a single byte
+	 *
+	 * @param b
+	 *            byte
+	 * @throws IOException
+	 */
+	public void write(final int b) throws IOException {
+		if (!buffer.hasRemaining())
+			flush();
+		buffer.put((byte) b);
+	}
+
+	/**
+	 * Write the bytes
+	 *
+	 * @param data
+	 *            bytes
+	 * @throws IOException
+	 */
+	public void write(final byte[] data) throws IOException {
+		int offset = 0;
+		while (offset < data.length) {
+			if (!buffer.hasRemaining())
+				flush();
+			int length = Math.min(buffer.remaining(), data.length - offset);
+			buffer.put(data, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Write the remaining bytes of the buffer
+	 *
+	 * @param data
+	 *            ByteBuffer
+	 * @throws IOException
+	 */
+	public void write(final ByteBuffer data) throws IOException {
+		flush();
+		while (data.hasRemaining())
+			channel.write(data);
+	}
+
+	/**
+	 * Write the decimal representation of the value, without intermediate
+	 * objects
+	 *
+	 * @param value
+	 *            int
+	 * @throws IOException
+	 */
+	public void writeInt(final int value) throws IOException {
+		if (buffer.remaining() < 11) // "-2147483648"
+			flush();
+		long v = value;
+		if (v < 0) {
+			buffer.put((byte) '-');
+			v = -v;
+		}
+		int start = buffer.position();
+		do {
+			buffer.put((byte) ('0' + v % 10));
+			v /= 10;
+		} while (v > 0);
+		// digits were written in reverse
+		for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+			byte tmp = buffer.get(i);
+			buffer.put(i, buffer.get(j));
+			buffer.put(j, tmp);
+		}
+	}
+
+	/**
+	 * Write an ASCII string
+	 *
+	 * @param s
+	 *            String
+	 * @throws IOException
+	 */
+	public void writeAscii(final String s) throws IOException {
+		for (int i = 0; i < s.length(); i++)
+			write(s.charAt(i));
+	}
+
+	/**
+	 * Write the system line separator
+	 *
+	 * @throws IOException
+	 */
+	public void newLine() throws IOException {
+		write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Write the buffered data to the temporary file
+	 *
+	 * @throws IOException
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Sync the data to disk and replace the target
+	 *
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+		if (closed)
+			throw new IOException("Writer already closed");
+		flush();
+		channel.force(true);
+		channel.close();
+		closed = true;
+		boolean moved = false;
+		try {
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				logger.debug("Atomic move not supported for {}", target);
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			// close() can't clean up anymore
+			if (!moved)
+				deleteTmp();
+		}
+		syncDirectory();
+	}
+
+	/**
+	 * Delete the temporary file after a failed move, keeping the move failure
+	 */
+	private void deleteTmp() {
+		try {
+			Files.deleteIfExists(tmp);
+		} catch (IOException e) {
+			logger.warn("Unable to delete {}", tmp, e);
+		}
+	}
+
+	/**
+	 * Sync the directory entry of the rename<br>
+	 * Not supported on every platform, failures are ignored
+	 */
+	private void syncDirectory() {
+		try (FileChannel dir = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			logger.trace("Unable to sync directory of {}", target);
+		}
+	}
+
+	/**
+	 * Discard the data, if not committed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		channel.close();
+		Files.deleteIfExists(tmp);
+	}
+}
@@ -0,0 +1,281 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary map format<br>
+ * Layout (big endian):
+ *
+ * <pre>
+ * int magic, short version, byte encoding, byte reserved
+ * int width, int height, float ball velocity, float gravity, int theme
+ * width * height cells, row by row, one byte or short per cell
+ * </pre>
+ *
+ * With run length encoding the cells are stored as runs of
+ * <code>varint length, byte value</code> instead. Maps are written with one
+ * byte per cell, matching the {@link MapGrid}, or run length encoded,
+ * whichever is smaller.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public final class BinaryMapFormat {
+	public static final int MAGIC = 0x424d4150; // "BMAP"
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 28;
+	// larger maps are rejected as corrupt
+	public static final int MAX_CELLS = 1 << 24;
+
+	// one byte per cell
+	public static final byte ENCODING_BYTE = 0;
+	// one short per cell, read only
+	public static final byte ENCODING_SHORT = 1;
+	// runs of equal byte cells
+	public static final byte ENCODING_RLE = 2;
+
+	private BinaryMapFormat() {
+	}
+
+	/**
+	 * Returns whether the file is a binary map
+	 *
+	 * @param file
+	 *            Map file
+	 * @return true if the file starts with the binary map magic
+	 */
+	public static boolean isBinary(final File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0)
+				;
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read the binary map into the map<br>
+	 * Read into a heap buffer, a memory mapping would lock the file on Windows
+	 * until garbage collected
+	 *
+	 * @param file
+	 *            Map file
+	 * @param map
+	 *            Map to fill
+	 * @throws IOException
+	 *             on read errors or invalid maps
+	 */
+	public static void read(final File file, final Map map) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > HEADER_SIZE + 2L * MAX_CELLS)
+				throw new IOException("Map too large: " + file);
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+				;
+			buffer.flip();
+		}
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt() != MAGIC)
+			throw new IOException("Not a binary map: " + file);
+		short version = buffer.getShort();
+		if (version != VERSION)
+			throw new IOException("Unsupported map version " + version + ": " + file);
+		byte encoding = buffer.get();
+		buffer.get(); // reserved
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		map.setBallVelocity(buffer.getFloat());
+		map.setGravity(buffer.getFloat());
+		map.setTheme(buffer.getInt());
+
+		if (encoding != ENCODING_BYTE && encoding != ENCODING_SHORT && encoding != ENCODING_RLE)
+			throw new IOException("Unknown map encoding " + encoding + ": " + file);
+		int cellSize = encoding == ENCODING_SHORT ? 2 : 1;
+		if (width < 0 || height < 0 || (long) width * height > MAX_CELLS)
+			throw new IOException("Invalid map size " + width + "x" + height + ": " + file);
+		if (encoding != ENCODING_RLE && buffer.remaining() < (long) width * height * cellSize)
+			throw new IOException("Truncated map: " + file);
+
+		MapGrid grid = new MapGrid(width, height);
+		if (encoding == ENCODING_BYTE) {
+			buffer.get(grid.getCells());
+		} else if (encoding == ENCODING_RLE) {
+			decodeRuns(buffer, grid.getCells(), file);
+		} else {
+			try {
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++)
+						grid.set(x, y, buffer.getShort());
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Block value out of range: " + file, e);
+			}
+		}
+		map.setGrid(grid);
+	}
+
+	/**
+	 * Decode the runs into the cells
+	 *
+	 * @param buffer
+	 *            positioned at the first run
+	 * @param cells
+	 *            cells to fill, all have to be covered
+	 * @param file
+	 *            for error messages
+	 * @throws IOException
+	 *             on corrupt runs
+	 */
+	private static void decodeRuns(final ByteBuffer buffer, final byte[] cells, final File file)
+			throws IOException {
+		int pos = 0;
+		try {
+			while (pos < cells.length) {
+				int length = readVarInt(buffer);
+				if (length <= 0 || length > cells.length - pos)
+					throw new IOException("Corrupt run of length " + length + " at cell " + pos + ": " + file);
+				Arrays.fill(cells, pos, pos + length, buffer.get());
+				pos += length;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated map: " + file, e);
+		}
+	}
+
+	/**
+	 * Read an unsigned varint, 7 bits per byte, low bits first
+	 *
+	 * @param buffer
+	 * @return int value, negative on overflow
+	 */
+	private static int readVarInt(final ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return value;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the size of the cells when run length encoded
+	 *
+	 * @param cells
+	 * @return long size in bytes
+	 */
+	private static long encodedRunsSize(final byte[] cells) {
+		long size = 0;
+		int pos = 0;
+		while (pos < cells.length) {
+			int end = runEnd(cells, pos);
+			size += varIntSize(end - pos) + 1;
+			pos = end;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the end (exclusive) of the run starting at pos
+	 */
+	private static int runEnd(final byte[] cells, final int pos) {
+		int end = pos + 1;
+		while (end < cells.length && cells[end] == cells[pos])
+			end++;
+		return end;
+	}
+
+	/**
+	 * Returns the amount of bytes of the varint
+	 */
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value >>>= 7) != 0)
+			size++;
+		return size;
+	}
+
+	/**
+	 * Write the map in binary format, run length encoded if smaller<br>
+	 * The file is replaced atomically, see {@link AtomicFileWriter}
+	 *
+	 * @param file
+	 *            Map file
+	 * @param map
+	 *            Map to write
+	 * @throws IOException
+	 */
+	public static void write(final File file, final Map map) throws IOException {
+		byte[] cells = map.getGrid().getCells();
+		write(file, map, encodedRunsSize(cells) < cells.length ? ENCODING_RLE : ENCODING_BYTE);
+	}
+
+	/**
+	 * Write the map in binary format<br>
+	 * The file is replaced atomically, see {@link AtomicFileWriter}
+	 *
+	 * @param file
+	 *            Map file
+	 * @param map
+	 *            Map to write
+	 * @param encoding
+	 *            {@link #ENCODING_BYTE} or {@link #ENCODING_RLE}
+	 * @throws IOException
+	 */
+	public static void write(final File file, final Map map, final byte encoding) throws IOException {
+		if (encoding != ENCODING_BYTE && encoding != ENCODING_RLE)
+			throw new IllegalArgumentException("Unsupported encoding for writing: " + encoding);
+		MapGrid grid = map.getGrid();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.put(encoding);
+		buffer.put((byte) 0);
+		buffer.putInt(grid.getWidth());
+		buffer.putInt(grid.getHeight());
+		buffer.putFloat(map.getBallVelocity());
+		buffer.putFloat(map.getGravity());
+		buffer.putInt(map.getTheme());
+		buffer.flip();
+		try (AtomicFileWriter writer = new AtomicFileWriter(file)) {
+			writer.write(buffer);
+			if (encoding == ENCODING_RLE)
+				writeRuns(writer, grid.getCells());
+			else
+				writer.write(grid.getCells());
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Write the cells as runs
+	 *
+	 * @param writer
+	 * @param cells
+	 * @throws IOException
+	 */
+	private static void writeRuns(final AtomicFileWriter writer, final byte[] cells) throws IOException {
+		int pos = 0;
+		while (pos < cells.length) {
+			int end = runEnd(cells, pos);
+			int length = end - pos;
+			while ((length & ~0x7f) != 0) {
+				writer.write((length & 0x7f) | 0x80);
+				length >>>= 7;
+			}
+			writer.write(length);
+			writer.write(cells[pos]);
+			pos = end;
+		}
+	}
+}
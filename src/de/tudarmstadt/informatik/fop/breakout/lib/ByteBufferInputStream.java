@@ -0,0 +1,56 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream reading from a ByteBuffer without copying it<br>
+ * Used to hand slices of mapped files to the decoders
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buffer;
+
+	/**
+	 * Creates a new ByteBufferInputStream<br>
+	 * Reads from the current position up to the limit of the buffer
+	 *
+	 * @param buffer
+	 *            ByteBuffer to read, its position is changed while reading
+	 */
+	public ByteBufferInputStream(final ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + skip);
+		return skip;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
@@ -0,0 +1,297 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.newdawn.slick.SlickException;
+import org.newdawn.slick.geom.Vector2f;
+
+import de.tudarmstadt.informatik.fop.breakout.gameObjects.Block;
+
+/**
+ * Streaming level for maps with more rows than fit on the screen<br>
+ * The map scrolls down, rows are split into chunks of {@value #CHUNK_ROWS}.
+ * Only chunks near the screen have their blocks instantiated, chunks leaving
+ * it are unloaded again, writing the block lives back into the grid. Rows
+ * scrolling past the pass line are dropped.<br>
+ * Memory used by blocks is bounded by the screen size, the map itself is
+ * kept as {@link MapGrid}.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class ChunkedLevel {
+	private final Logger logger = LogManager.getLogger(this);
+
+	public static final int CHUNK_ROWS = 8;
+
+	private final MapGrid grid;
+	private final AssetManager am;
+	private final int[] blockHandles;
+	private final int stoneWidth;
+	private final int stoneHeight;
+	private final float startX;
+	// y of row 0 without scrolling
+	private final float baseY;
+	// rows below this line are dropped
+	private final float passLine;
+	private final Chunk[] chunks;
+	// cell index of every instantiated block
+	private final IdentityHashMap<Block, Integer> cells = new IdentityHashMap<>();
+	private float scroll = 0;
+	// rows from here on are passed
+	private int passedRow;
+	private int remaining = 0;
+
+	/**
+	 * Creates a new ChunkedLevel<br>
+	 * No blocks are instantiated until the first {@link #update(float, ChunkListener)}
+	 *
+	 * @param map
+	 *            Loaded map
+	 * @param screenWidth
+	 *            Game display width
+	 * @param stoneWidth
+	 *            Width of a block
+	 * @param stoneHeight
+	 *            Height of a block
+	 * @param visibleRows
+	 *            Rows visible at the start, the last rows of the map
+	 * @param am
+	 *            AssetManager for the block images
+	 */
+	public ChunkedLevel(final Map map, final int screenWidth, final int stoneWidth, final int stoneHeight,
+			final int visibleRows, final AssetManager am) {
+		this.grid = map.getGrid().copy(); // lives are written back
+		this.am = am;
+		this.blockHandles = ThemeManager.resolveBlockHandles(map.getTheme(), am);
+		this.stoneWidth = stoneWidth;
+		this.stoneHeight = stoneHeight;
+		this.startX = (screenWidth - grid.getWidth() * stoneWidth) / 2 + stoneWidth / 2;
+		this.baseY = stoneHeight / 2 + (visibleRows - grid.getHeight()) * stoneHeight;
+		this.passLine = stoneHeight / 2 + visibleRows * stoneHeight;
+		this.passedRow = grid.getHeight();
+		this.chunks = new Chunk[(grid.getHeight() + CHUNK_ROWS - 1) / CHUNK_ROWS];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = new Chunk();
+		int[] row = new int[grid.getWidth()];
+		for (int y = 0; y < grid.getHeight(); y++) {
+			grid.getRow(y, row);
+			for (int v : row) {
+				if (v > 0)
+					remaining++;
+			}
+		}
+	}
+
+	/**
+	 * Scroll the level and load / unload chunks accordingly
+	 *
+	 * @param pixels
+	 *            Distance to scroll down
+	 * @param listener
+	 *            Notified about every added & removed block
+	 * @throws SlickException
+	 */
+	public void update(final float pixels, final ChunkListener listener) throws SlickException {
+		if (pixels != 0) {
+			scroll += pixels;
+			for (Block b : cells.keySet())
+				b.setLocation(b.getLocation().x, b.getLocation().y + pixels);
+		}
+		while (passedRow > 0 && getRowY(passedRow - 1) > passLine)
+			passRow(--passedRow, listener);
+
+		final float margin = CHUNK_ROWS * stoneHeight;
+		for (int i = 0; i < chunks.length; i++) {
+			int first = i * CHUNK_ROWS;
+			int last = Math.min(passedRow, first + CHUNK_ROWS) - 1;
+			boolean inWindow = last >= first && getRowY(last) >= -margin && getRowY(first) <= passLine;
+			// unload only when clearly out of the window, avoids flickering
+			boolean outside = last < first || getRowY(last) < -2 * margin;
+			if (inWindow && !chunks[i].loaded)
+				load(i, listener);
+			else if (outside && chunks[i].loaded)
+				unload(i, listener);
+		}
+	}
+
+	/**
+	 * Instantiate the blocks of the chunk
+	 *
+	 * @param index
+	 *            Chunk index
+	 * @param listener
+	 * @throws SlickException
+	 */
+	private void load(final int index, final ChunkListener listener) throws SlickException {
+		Chunk chunk = chunks[index];
+		int end = Math.min(passedRow, (index + 1) * CHUNK_ROWS);
+		for (int y = index * CHUNK_ROWS; y < end; y++) {
+			for (int x = 0; x < grid.getWidth(); x++) {
+				int life = grid.get(x, y);
+				if (life == 0)
+					continue;
+				Block block = new Block(new Vector2f(startX + x * stoneWidth, getRowY(y)), stoneWidth, stoneHeight,
+						life, am, blockHandles);
+				chunk.blocks.add(block);
+				cells.put(block, y * grid.getWidth() + x);
+				listener.blockAdded(block);
+			}
+		}
+		chunk.loaded = true;
+		logger.trace("Loaded chunk {} with {} blocks", index, chunk.blocks.size());
+	}
+
+	/**
+	 * Remove the blocks of the chunk, keeping their lives in the grid
+	 *
+	 * @param index
+	 *            Chunk index
+	 * @param listener
+	 *            Notified about every removed block, may be null
+	 */
+	private void unload(final int index, final ChunkListener listener) {
+		Chunk chunk = chunks[index];
+		for (Block b : chunk.blocks) {
+			int cell = cells.remove(b);
+			grid.set(cell % grid.getWidth(), cell / grid.getWidth(), b.getLife());
+			if (listener != null)
+				listener.blockRemoved(b);
+			b.releaseImage();
+		}
+		chunk.blocks.clear();
+		chunk.loaded = false;
+		logger.trace("Unloaded chunk {}", index);
+	}
+
+	/**
+	 * Drop the row, which scrolled past the pass line
+	 *
+	 * @param y
+	 *            Row
+	 * @param listener
+	 */
+	private void passRow(final int y, final ChunkListener listener) {
+		Chunk chunk = chunks[y / CHUNK_ROWS];
+		Iterator<Block> iter = chunk.blocks.iterator();
+		while (iter.hasNext()) {
+			Block b = iter.next();
+			int cell = cells.get(b);
+			if (cell / grid.getWidth() != y)
+				continue;
+			iter.remove();
+			cells.remove(b);
+			grid.set(cell % grid.getWidth(), y, b.getLife());
+			listener.blockRemoved(b);
+			b.releaseImage();
+		}
+		for (int x = 0; x < grid.getWidth(); x++) {
+			if (grid.get(x, y) > 0)
+				remaining--;
+		}
+		grid.fillRow(y, 0);
+	}
+
+	/**
+	 * Notify about a destroyed block
+	 *
+	 * @param block
+	 *            Block without life left, image already released
+	 */
+	public void blockDestroyed(final Block block) {
+		Integer cell = cells.remove(block);
+		if (cell == null)
+			return;
+		int y = cell / grid.getWidth();
+		chunks[y / CHUNK_ROWS].blocks.remove(block);
+		grid.set(cell % grid.getWidth(), y, 0);
+		remaining--;
+	}
+
+	/**
+	 * Release all blocks, for example after the level was left
+	 */
+	public void release() {
+		for (int i = 0; i < chunks.length; i++) {
+			if (chunks[i].loaded)
+				unload(i, null);
+		}
+	}
+
+	/**
+	 * Returns the y coordinate of the row center
+	 *
+	 * @param y
+	 *            Row
+	 * @return float y coordinate
+	 */
+	private float getRowY(final int y) {
+		return baseY + y * stoneHeight + scroll;
+	}
+
+	/**
+	 * Returns the amount of destroyable blocks neither destroyed nor passed
+	 *
+	 * @return int remaining blocks
+	 */
+	public int getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 * Returns the amount of instantiated blocks
+	 *
+	 * @return int loaded blocks
+	 */
+	public int getLoadedBlocks() {
+		return cells.size();
+	}
+
+	/**
+	 * Returns the amount of chunks with instantiated blocks
+	 *
+	 * @return int loaded chunks
+	 */
+	public int getLoadedChunks() {
+		int count = 0;
+		for (Chunk c : chunks) {
+			if (c.loaded)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Listener for blocks entering or leaving the game
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public interface ChunkListener {
+		/**
+		 * Block instantiated
+		 *
+		 * @param block
+		 */
+		public void blockAdded(Block block);
+
+		/**
+		 * Block unloaded or passed, its image is released afterwards
+		 *
+		 * @param block
+		 */
+		public void blockRemoved(Block block);
+	}
+
+	/**
+	 * Rows of the map, instantiated when loaded
+	 */
+	private static class Chunk {
+		private final ArrayList<Block> blocks = new ArrayList<>();
+		private boolean loaded = false;
+	}
+}
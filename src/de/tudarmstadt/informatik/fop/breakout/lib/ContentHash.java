@@ -0,0 +1,53 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashes for cache keys<br>
+ * Hex encoded SHA-1 of file contents, used by the texture & level caches and
+ * the map catalog.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public final class ContentHash {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private ContentHash() {
+	}
+
+	/**
+	 * Returns the hex SHA-1 hash of the data
+	 *
+	 * @param data
+	 * @return String hash
+	 */
+	public static String of(final byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+			char[] hex = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+				hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(hex);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 not available", e);
+		}
+	}
+
+	/**
+	 * Returns the hex SHA-1 hash of the file content
+	 *
+	 * @param file
+	 * @return String hash
+	 * @throws IOException
+	 */
+	public static String of(final File file) throws IOException {
+		return of(Files.readAllBytes(file.toPath()));
+	}
+}
@@ -0,0 +1,108 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.Arrays;
+
+/**
+ * Fenwick tree of counts over non negative buckets<br>
+ * Updates and prefix sums take O(log n), the tree grows to fit the largest
+ * bucket used, up to {@value #MAX_BUCKETS} buckets.<br>
+ * Not thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class FenwickTree {
+	// bounds the memory of the tree
+	public static final int MAX_BUCKETS = 1 << 24;
+
+	private long[] tree;
+	private long total = 0;
+
+	/**
+	 * Creates a new FenwickTree
+	 *
+	 * @param buckets
+	 *            Initial amount of buckets, at most {@value #MAX_BUCKETS}
+	 */
+	public FenwickTree(final int buckets) {
+		if (buckets > MAX_BUCKETS)
+			throw new IllegalArgumentException("Too many buckets: " + buckets);
+		tree = new long[Math.max(buckets, 1) + 1];
+	}
+
+	/**
+	 * Add to the count of the bucket
+	 *
+	 * @param bucket
+	 *            Bucket, not negative and below {@value #MAX_BUCKETS}
+	 * @param delta
+	 *            Value to add
+	 */
+	public void add(final int bucket, final long delta) {
+		if (bucket < 0 || bucket >= MAX_BUCKETS)
+			throw new IllegalArgumentException("Bucket out of range: " + bucket);
+		if (bucket + 1 >= tree.length)
+			grow(bucket + 1);
+		for (int i = bucket + 1; i < tree.length; i += i & -i)
+			tree[i] += delta;
+		total += delta;
+	}
+
+	/**
+	 * Returns the sum of the buckets 0 to bucket, inclusive
+	 *
+	 * @param bucket
+	 *            Last bucket
+	 * @return long sum
+	 */
+	public long prefixSum(final int bucket) {
+		if (bucket < 0)
+			return 0;
+		long sum = 0;
+		for (int i = Math.min(bucket + 1, tree.length - 1); i > 0; i -= i & -i)
+			sum += tree[i];
+		return sum;
+	}
+
+	/**
+	 * Returns the sum of all buckets above the bucket
+	 *
+	 * @param bucket
+	 *            Bucket
+	 * @return long sum
+	 */
+	public long sumAbove(final int bucket) {
+		return total - prefixSum(bucket);
+	}
+
+	/**
+	 * Returns the sum of all buckets
+	 *
+	 * @return long total
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Grow to fit the index, rebuilding the tree
+	 *
+	 * @param index
+	 *            Tree index to fit
+	 */
+	private void grow(final int index) {
+		int size = tree.length - 1;
+		while (size < index)
+			size = (int) Math.min(size * 2L, MAX_BUCKETS);
+		// recover the bucket counts, then rebuild
+		long[] counts = new long[size + 1];
+		for (int i = 1; i < tree.length; i++)
+			counts[i] = prefixSum(i - 1) - prefixSum(i - 2);
+		tree = Arrays.copyOf(counts, size + 1);
+		for (int i = 1; i <= size; i++) {
+			int parent = i + (i & -i);
+			if (parent <= size)
+				tree[parent] += tree[i];
+		}
+	}
+}
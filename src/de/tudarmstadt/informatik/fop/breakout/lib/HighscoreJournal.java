@@ -0,0 +1,431 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+
+/**
+ * Append only journal of highscore entries<br>
+ * New entries are appended as one record to the current journal generation.
+ * Compaction switches to a new generation and writes the snapshot in
+ * the background, which records the last generation it contains. On startup
+ * the snapshot is loaded and newer journals are replayed, a torn last record
+ * of a crash is dropped.<br>
+ * Threading: appending, compacting and recovering have to be serialized by
+ * the caller, the {@link HighscoreLib} does so with its lock. They never block
+ * on disk access, except recovery waiting for pending writes of the same file.
+ * All disk access runs write-behind on the thread of the
+ * {@link HighscoreWriter}, records appended meanwhile are written as one
+ * batch. Pending records are handed over under their own lock, the open
+ * journal file is only used by the writer thread.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class HighscoreJournal {
+	private final Logger logger = LogManager.getLogger(this);
+
+	// journal records before the journal is compacted
+	public static final int COMPACT_RECORDS = 16;
+	private static final String GENERATION_HEADER = "# generation ";
+	private static final String JOURNAL_SUFFIX = ".journal.";
+	private final static int C_NAME_POS = 0;
+	private final static int C_BLOCKS_POS = 1;
+	private final static int C_TIME_POS = 2;
+	private final static char C_SEPARATOR = ':';
+
+	/**
+	 * Durability of appended records
+	 */
+	public enum Durability {
+		/** written by the writer thread, synced to disk by the OS */
+		ASYNC,
+		/** written & synced to disk per batch by the writer thread */
+		FSYNC
+	}
+
+	private final File snapshot;
+	private final Durability durability;
+	private final HighscoreWriter writer;
+	private long generation = 0;
+	private int records = 0;
+	// records not yet written, guarded by itself
+	private final ArrayList<PendingRecord> pending = new ArrayList<>();
+	private boolean flushScheduled = false;
+	// writer thread only
+	private FileChannel journal = null;
+	private long journalGeneration = -1;
+
+	/**
+	 * Creates a new HighscoreJournal
+	 *
+	 * @param snapshot
+	 *            Snapshot file, journals are stored next to it
+	 * @param durability
+	 *            Durability of appended records
+	 * @param writer
+	 *            Writer doing the disk access
+	 */
+	public HighscoreJournal(final File snapshot, final Durability durability, final HighscoreWriter writer) {
+		this.snapshot = snapshot.getAbsoluteFile();
+		this.durability = durability;
+		this.writer = writer;
+	}
+
+	/**
+	 * Load the snapshot & replay the newer journals<br>
+	 * Appends go to a new journal generation, so a torn record is never
+	 * continued
+	 *
+	 * @return ArrayList<HighscoreEntry> recovered entries, unsorted
+	 */
+	public ArrayList<HighscoreEntry> recover() {
+		awaitWrites(); // of other journals on the same file
+		ArrayList<HighscoreEntry> entries = new ArrayList<>();
+		// journals first, a concurrent compaction deletes them only after
+		// writing the snapshot
+		ArrayList<Long> generations = listGenerations();
+		ArrayList<ArrayList<HighscoreEntry>> journals = new ArrayList<>(generations.size());
+		for (long gen : generations)
+			journals.add(readJournal(gen));
+		long covered = readSnapshot(entries);
+		long maxGeneration = covered;
+		for (int i = 0; i < generations.size(); i++) {
+			long gen = generations.get(i);
+			maxGeneration = Math.max(maxGeneration, gen);
+			if (gen > covered) {
+				entries.addAll(journals.get(i));
+				records += journals.get(i).size();
+			}
+		}
+		generation = maxGeneration + 1;
+		if (records > 0)
+			logger.info("Replayed {} highscore journal records", records);
+		return entries;
+	}
+
+	/**
+	 * Append the entry to the journal<br>
+	 * Returns at once, the record is written by the writer thread
+	 *
+	 * @param e
+	 *            Entry
+	 */
+	public void append(final HighscoreEntry e) {
+		PendingRecord record = new PendingRecord(generation, (format(e) + "\n").getBytes(StandardCharsets.UTF_8));
+		synchronized (pending) {
+			pending.add(record);
+			if (!flushScheduled) {
+				flushScheduled = true;
+				writer.submit(snapshot, this::flush);
+			}
+		}
+		records++;
+	}
+
+	/**
+	 * Write all pending records as one batch, on the writer thread
+	 */
+	private void flush() {
+		ArrayList<PendingRecord> batch;
+		synchronized (pending) {
+			batch = new ArrayList<>(pending);
+			pending.clear();
+			flushScheduled = false;
+		}
+		int i = 0;
+		try {
+			while (i < batch.size()) {
+				// consecutive records of one generation are written at once
+				long gen = batch.get(i).generation;
+				int end = i;
+				int length = 0;
+				while (end < batch.size() && batch.get(end).generation == gen)
+					length += batch.get(end++).data.length;
+				ByteBuffer buffer = ByteBuffer.allocate(length);
+				for (int j = i; j < end; j++)
+					buffer.put(batch.get(j).data);
+				buffer.flip();
+				if (journal == null || journalGeneration != gen) {
+					closeJournal();
+					journal = FileChannel.open(getJournalFile(gen).toPath(), StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+					journalGeneration = gen;
+				}
+				while (buffer.hasRemaining())
+					journal.write(buffer);
+				i = end;
+			}
+			if (durability == Durability.FSYNC && journal != null)
+				journal.force(false);
+		} catch (IOException e) {
+			logger.error("Unable to append {} highscore records: ", batch.size() - i, e);
+			closeJournal();
+		}
+	}
+
+	/**
+	 * Wait for the pending writes of the snapshot file & its journals<br>
+	 * Including those of other journals on the same file
+	 */
+	public void awaitWrites() {
+		writer.await(snapshot);
+	}
+
+	/**
+	 * Returns the amount of records in the journal, including replayed ones
+	 *
+	 * @return int records
+	 */
+	public int getRecords() {
+		return records;
+	}
+
+	/**
+	 * Returns whether enough records were appended to compact the journal
+	 *
+	 * @return true if {@link #compact(List)} should be called
+	 */
+	public boolean needsCompaction() {
+		return records >= COMPACT_RECORDS;
+	}
+
+	/**
+	 * Start a new journal generation & write the snapshot in the background
+	 *
+	 * @param entries
+	 *            All entries to keep in recovery order, not modified afterwards
+	 */
+	public void compact(final List<HighscoreEntry> entries) {
+		final long covered = generation++;
+		records = 0;
+		// after the writes of the covered generations, queued before
+		writer.submit(snapshot, () -> {
+			if (journalGeneration <= covered)
+				closeJournal();
+			writeSnapshot(entries, covered);
+		});
+	}
+
+	/**
+	 * Close the open journal, on the writer thread
+	 */
+	private void closeJournal() {
+		if (journal == null)
+			return;
+		try {
+			if (durability == Durability.FSYNC)
+				journal.force(false);
+			journal.close();
+		} catch (IOException e) {
+			logger.warn("Unable to close highscore journal: ", e);
+		}
+		journal = null;
+		journalGeneration = -1;
+	}
+
+	/**
+	 * Write the snapshot & delete the journals it contains
+	 *
+	 * @param entries
+	 *            entries in recovery order
+	 * @param covered
+	 *            last journal generation contained
+	 */
+	private void writeSnapshot(final List<HighscoreEntry> entries, final long covered) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(GENERATION_HEADER).append(covered).append('\n');
+		for (HighscoreEntry e : entries)
+			sb.append(format(e)).append('\n');
+		try (AtomicFileWriter out = new AtomicFileWriter(snapshot)) {
+			out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			out.commit();
+		} catch (IOException e) {
+			logger.error("Unable to write highscore file: ", e);
+			return;
+		}
+		for (long gen : listGenerations()) {
+			if (gen <= covered && !getJournalFile(gen).delete())
+				logger.warn("Unable to delete highscore journal {}", gen);
+		}
+		logger.debug("Compacted highscore up to generation {}", covered);
+	}
+
+	/**
+	 * Read the snapshot into the list
+	 *
+	 * @param entries
+	 *            List to add to
+	 * @return long last journal generation contained, -1 if none
+	 */
+	private long readSnapshot(final ArrayList<HighscoreEntry> entries) {
+		long covered = -1;
+		String line = "";
+		try (BufferedReader br = Files.newBufferedReader(snapshot.toPath(), StandardCharsets.UTF_8)) {
+			while ((line = br.readLine()) != null) {
+				if (line.startsWith(GENERATION_HEADER)) {
+					covered = Long.parseLong(line.substring(GENERATION_HEADER.length()));
+				} else if (!line.isEmpty() && !line.startsWith("#")) {
+					HighscoreEntry e = parse(line);
+					if (e != null)
+						entries.add(e);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// no highscore yet
+		} catch (IOException e) {
+			logger.error("Unable to read highscore file: ", e);
+		} catch (NumberFormatException e) {
+			logger.error("Malformed highscore file\nLine:{}\n{}", line, e);
+		}
+		return covered;
+	}
+
+	/**
+	 * Read the records of the journal<br>
+	 * A torn last record without line end is dropped
+	 *
+	 * @param gen
+	 *            Generation
+	 * @return ArrayList<HighscoreEntry> records
+	 */
+	private ArrayList<HighscoreEntry> readJournal(final long gen) {
+		ArrayList<HighscoreEntry> entries = new ArrayList<>();
+		byte[] data;
+		try {
+			data = Files.readAllBytes(getJournalFile(gen).toPath());
+		} catch (NoSuchFileException e) {
+			return entries; // compacted meanwhile
+		} catch (IOException e) {
+			logger.error("Unable to read highscore journal: ", e);
+			return entries;
+		}
+		int start = 0;
+		for (int i = 0; i < data.length; i++) {
+			if (data[i] == '\n') {
+				HighscoreEntry e = parse(new String(data, start, i - start, StandardCharsets.UTF_8));
+				if (e != null)
+					entries.add(e);
+				start = i + 1;
+			}
+		}
+		if (start < data.length)
+			logger.warn("Dropped torn highscore journal record of generation {}", gen);
+		return entries;
+	}
+
+	/**
+	 * Returns the existing journal generations, ascending
+	 *
+	 * @return ArrayList<Long> generations
+	 */
+	private ArrayList<Long> listGenerations() {
+		ArrayList<Long> generations = new ArrayList<>();
+		String prefix = snapshot.getName() + JOURNAL_SUFFIX;
+		File[] files = snapshot.getParentFile().listFiles((d, name) -> name.startsWith(prefix));
+		if (files == null)
+			return generations;
+		for (File f : files) {
+			try {
+				generations.add(Long.parseLong(f.getName().substring(prefix.length())));
+			} catch (NumberFormatException e) {
+				logger.debug("Ignoring {}", f);
+			}
+		}
+		generations.sort(null);
+		return generations;
+	}
+
+	/**
+	 * Returns the journal file of the generation
+	 *
+	 * @param gen
+	 *            Generation
+	 * @return File
+	 */
+	private File getJournalFile(final long gen) {
+		return new File(snapshot.getParentFile(), snapshot.getName() + JOURNAL_SUFFIX + gen);
+	}
+
+	/**
+	 * Journal record waiting for the writer thread
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	private static class PendingRecord {
+		private final long generation;
+		private final byte[] data;
+
+		private PendingRecord(final long generation, final byte[] data) {
+			this.generation = generation;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Returns the record of the entry
+	 *
+	 * @param e
+	 *            Entry
+	 * @return String record without line end
+	 */
+	private static String format(final HighscoreEntry e) {
+		return e.getPlayerName() + C_SEPARATOR + e.getNumberOfDestroyedBlocks() + C_SEPARATOR + e.getElapsedTime();
+	}
+
+	/**
+	 * Returns whether the entry can be recorded<br>
+	 * Destroyed blocks have to be between 0 and {@value PlayerIndex#MAX_BUCKET},
+	 * the time has to be finite.
+	 *
+	 * @param e
+	 *            Entry
+	 * @return true if in range
+	 */
+	static boolean isInRange(final HighscoreEntry e) {
+		int blocks = e.getNumberOfDestroyedBlocks();
+		float time = e.getElapsedTime();
+		return blocks >= 0 && blocks <= PlayerIndex.MAX_BUCKET && !Float.isNaN(time) && !Float.isInfinite(time);
+	}
+
+	/**
+	 * Parse a record
+	 *
+	 * @param line
+	 *            Record without line end
+	 * @return HighscoreEntry or null if malformed or out of range
+	 */
+	private HighscoreEntry parse(final String line) {
+		String[] split = line.split(String.valueOf(C_SEPARATOR));
+		if (split.length < 3) {
+			logger.error("Unable to parse line! {}", line);
+			return null;
+		}
+		try {
+			HighscoreEntry e = new HighscoreEntry(split[C_NAME_POS], Integer.parseInt(split[C_BLOCKS_POS]),
+					Float.parseFloat(split[C_TIME_POS]));
+			if (!isInRange(e)) {
+				logger.error("Highscore record out of range: {}", line);
+				return null;
+			}
+			return e;
+		} catch (NumberFormatException e) {
+			logger.error("Malformed highscore record\nLine:{}\n{}", line, e);
+			return null;
+		}
+	}
+}
@@ -1,37 +1,38 @@
 package de.tudarmstadt.informatik.fop.breakout.lib;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreJournal.Durability;
 import de.tudarmstadt.informatik.fop.breakout.test.adapter.IHighscoreEntry;
 
 /**
  * Highscore library<br>
- * Handling the highscore loading / saving and sorting
+ * Handling the highscore loading / saving and sorting, persisted through a
+ * {@link HighscoreJournal}. Only the best maxEntries are kept in a
+ * {@link TopList}, so memory and insertion cost are bounded. The best games of
+ * each player are kept in a {@link PlayerIndex} for rank queries. Readers get
+ * an immutable snapshot of the highscore, republished on every change, so they
+ * never lock or wait for writers. Changes are written by a
+ * {@link HighscoreWriter} and never wait for the disk, only loading waits for
+ * pending writes of the same file.
  * 
  * @author Aron Heinecke
  *
  */
 public class HighscoreLib {
 	private final Logger logger = LogManager.getLogger(this);
-	private ArrayList<HighscoreEntry> highscore = new ArrayList<>();
-	private final File file;
-	private final int maxEntries;
-
-	private final static int C_NAME_POS = 0;
-	private final static int C_BLOCKS_POS = 1;
-	private final static int C_TIME_POS = 2;
-	private final static char C_SEPARATOR = ':';
+	private final TopList<HighscoreEntry> highscore;
+	private final PlayerIndex players = new PlayerIndex();
+	private final HighscoreJournal journal;
+	private volatile List<HighscoreEntry> snapshot = Collections.emptyList();
 
 	/**
 	 * Creates a new HighscoreLib instance
@@ -40,7 +41,21 @@ public class HighscoreLib {
 	 *            Maximum Entries the highscore list should carry and return
 	 */
 	public HighscoreLib(final int maxEntries) {
-		this(new File("highschore.hsc"), maxEntries);
+		this(maxEntries, Durability.ASYNC, HighscoreWriter.getDefault());
+	}
+
+	/**
+	 * Creates a new HighscoreLib instance
+	 * 
+	 * @param maxEntries
+	 *            Maximum Entries the highscore list should carry and return
+	 * @param durability
+	 *            Durability of the background writes
+	 * @param writer
+	 *            Writer doing the background writes
+	 */
+	public HighscoreLib(final int maxEntries, final Durability durability, final HighscoreWriter writer) {
+		this(new File("highschore.hsc"), maxEntries, durability, writer);
 	}
 
 	/**
@@ -53,106 +68,169 @@ public class HighscoreLib {
 	 *            the File that should be read/written to
 	 */
 	public HighscoreLib(final File file, final int maxEntries) {
-		this.file = file;
-		logger.debug(file.getAbsolutePath());
-		this.maxEntries = maxEntries;
-		if (file.exists())
-			load();
+		this(file, maxEntries, Durability.ASYNC, HighscoreWriter.getDefault());
 	}
 
 	/**
-	 * Load highscore from file
+	 * Creates a new HighscoreLib instance
+	 * 
+	 * @param file
+	 *            the File that should be read/written to
+	 * @param maxEntries
+	 *            Maximum Entries the highscore list should carry and return
+	 * @param durability
+	 *            Durability of the background writes
+	 * @param writer
+	 *            Writer doing the background writes
 	 */
-	private void load() {
-		synchronized (highscore) {
-			String line = "";
-			highscore.clear();
-			try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-				while ((line = br.readLine()) != null) {
-					String[] split = line.split(":");
-					if (split.length < 3) {
-						logger.error("Unable to parse line! {}", line);
-					} else {
-						HighscoreEntry highscoreEntry = new HighscoreEntry(split[C_NAME_POS],
-								Integer.valueOf(split[C_BLOCKS_POS]), Float.valueOf(split[C_TIME_POS]));
-						highscore.add(highscoreEntry);
-					}
-				}
-				Collections.sort(highscore);
-			} catch (IOException e) {
-				logger.error("Unable to read highscore file: ", e);
-			} catch (NumberFormatException e) {
-				logger.error("Malformed highscore file\nLine:{}\n{}", line, e);
-			}
-		}
+	public HighscoreLib(final File file, final int maxEntries, final Durability durability,
+			final HighscoreWriter writer) {
+		logger.debug(file.getAbsolutePath());
+		this.highscore = new TopList<>(maxEntries);
+		this.journal = new HighscoreJournal(file, durability, writer);
+		load();
 	}
 
 	/**
-	 * Save highscore to file<br>
-	 * But only the highest 10 entries
+	 * Load highscore from snapshot & journal
 	 */
-	private void save() {
+	private void load() {
 		synchronized (highscore) {
-			try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false)))) {
-				StringBuffer sb = new StringBuffer();
-				for (int i = 0; i < maxEntries && i < highscore.size(); i++) {
-					HighscoreEntry e = highscore.get(i);
-					sb.append(e.getPlayerName()); // C_NAME_POS
-					sb.append(C_SEPARATOR);
-					sb.append(e.getNumberOfDestroyedBlocks()); // C_BLOCKS_POS
-					sb.append(C_SEPARATOR);
-					sb.append(e.getElapsedTime()); // C_TIME_POS
-					sb.append("\n");
-				}
-
-				bw.write(sb.toString());
-				bw.flush();
-			} catch (IOException e) {
-				logger.error("Unable to write highscore file: ", e);
+			highscore.clear();
+			players.clear();
+			for (HighscoreEntry e : journal.recover()) {
+				highscore.offer(e);
+				players.add(e);
 			}
+			publish();
+			if (journal.getRecords() > 0) // replayed, fold into the snapshot
+				journal.compact(getRecords());
 		}
 	}
 
 	/**
-	 * Clear highscore
+	 * Clear highscore<br>
+	 * Applied in memory at once, the empty highscore is written in the
+	 * background
 	 */
 	public void clear() {
 		synchronized (highscore) {
 			highscore.clear();
-			save();
+			players.clear();
+			publish();
+			journal.compact(new ArrayList<HighscoreEntry>());
 		}
 	}
 
 	/**
 	 * Add new entry to the highscore<br>
-	 * This includes different values for the same player
+	 * This includes different values for the same player. Applied in memory at
+	 * once, entries making it into the highscore or the history of the player
+	 * are appended to the journal & compacted in the background.<br>
+	 * Entries out of the recordable range are dropped, see
+	 * {@link HighscoreJournal#isInRange(HighscoreEntry)}.
 	 * 
 	 * @param e
 	 *            Entry
 	 */
 	public void addEntry(final HighscoreEntry e) {
+		if (!HighscoreJournal.isInRange(e)) {
+			logger.warn("Highscore entry out of range: {} {} {}", e.getPlayerName(), e.getNumberOfDestroyedBlocks(),
+					e.getElapsedTime());
+			return;
+		}
 		synchronized (highscore) {
-			e.name = e.name.replaceAll(":", ""); // sanitize
-			highscore.add(e);
-			Collections.sort(highscore);
-			save();
+			e.name = e.name.replaceAll("[:\\r\\n]", ""); // sanitize
+			boolean kept = highscore.offer(e);
+			if (kept)
+				publish();
+			kept |= players.add(e);
+			if (!kept)
+				return;
+			journal.append(e);
+			if (journal.needsCompaction())
+				journal.compact(getRecords());
 		}
 	}
 
+	/**
+	 * Wait until all changes of this highscore are written
+	 */
+	public void flush() {
+		journal.awaitWrites();
+	}
+
+	/**
+	 * Publish a new snapshot of the highscore, called with the lock held
+	 */
+	private void publish() {
+		snapshot = Collections.unmodifiableList(highscore.toList());
+	}
+
 	/**
 	 * Returns the highest X entries<br>
 	 * while x was defined at constructing this class
 	 * 
-	 * @return ArrayList<Entry>
+	 * @return ArrayList<Entry> modifiable copy
 	 */
 	public ArrayList<HighscoreEntry> getHighscore() {
-		ArrayList<HighscoreEntry> output = new ArrayList<>();
+		return new ArrayList<>(snapshot);
+	}
+
+	/**
+	 * Returns the current highscore without locking or copying<br>
+	 * The snapshot is immutable and not affected by later changes
+	 * 
+	 * @return List<HighscoreEntry> unmodifiable snapshot
+	 */
+	public List<HighscoreEntry> snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the global rank of the player by the best entry
+	 * 
+	 * @param name
+	 *            Player name
+	 * @return int rank starting at 1, 0 if the player is unknown
+	 */
+	public int getRank(final String name) {
 		synchronized (highscore) {
-			for (int i = 0; i < maxEntries && i < highscore.size(); i++) {
-				output.add(highscore.get(i));
-			}
+			return players.getRank(name);
+		}
+	}
+
+	/**
+	 * Returns the best entries of the player
+	 * 
+	 * @param name
+	 *            Player name
+	 * @return ArrayList<HighscoreEntry> best first, empty if unknown
+	 */
+	public ArrayList<HighscoreEntry> getPlayerHistory(final String name) {
+		synchronized (highscore) {
+			PlayerIndex.Player player = players.getPlayer(name);
+			return player == null ? new ArrayList<HighscoreEntry>() : player.getHistory();
+		}
+	}
+
+	/**
+	 * Returns all entries to persist<br>
+	 * The highscore in order first, so ties keep their order on recovery. Every
+	 * snapshot holds at most maxEntries + {@value PlayerIndex#HISTORY_SIZE}
+	 * entries per player, growing with the amount of players.
+	 * 
+	 * @return ArrayList<HighscoreEntry> entries
+	 */
+	private ArrayList<HighscoreEntry> getRecords() {
+		ArrayList<HighscoreEntry> records = highscore.toList();
+		Set<HighscoreEntry> written = Collections.newSetFromMap(new IdentityHashMap<HighscoreEntry, Boolean>());
+		written.addAll(records);
+		for (HighscoreEntry e : players.getEntries()) {
+			if (written.add(e))
+				records.add(e);
 		}
-		return output;
+		return records;
 	}
 
 	/**
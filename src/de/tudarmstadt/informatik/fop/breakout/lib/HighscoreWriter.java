@@ -0,0 +1,148 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Background writer of the highscore journals<br>
+ * All disk access of the journals using it runs in submission order on one
+ * daemon thread. The last pending write of every highscore file is tracked, so
+ * a journal waits only for the writes of its own file, never for other
+ * journals.<br>
+ * The owner closes the writer on exit, flushing all pending writes. Users
+ * without an owner share the {@link #getDefault()} writer, which is flushed by
+ * a shutdown hook.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class HighscoreWriter implements AutoCloseable {
+	private final Logger logger = LogManager.getLogger(this);
+
+	// maximum wait for pending writes
+	private static final long FLUSH_TIMEOUT_MS = 5000;
+
+	private static HighscoreWriter defaultWriter = null;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "highscore-writer");
+		t.setDaemon(true);
+		return t;
+	});
+	// last pending write by highscore file
+	private final ConcurrentHashMap<File, Future<?>> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the writer shared by all users without an own writer<br>
+	 * Created on first use, pending writes are flushed on exit
+	 *
+	 * @return HighscoreWriter
+	 */
+	public static synchronized HighscoreWriter getDefault() {
+		if (defaultWriter == null) {
+			defaultWriter = new HighscoreWriter();
+			Runtime.getRuntime().addShutdownHook(new Thread(defaultWriter::close, "highscore-flush"));
+		}
+		return defaultWriter;
+	}
+
+	/**
+	 * Queue a write of the highscore file
+	 *
+	 * @param file
+	 *            Highscore file written by the task
+	 * @param task
+	 *            Write, run on the writer thread
+	 * @return Future of the write
+	 * @throws RejectedExecutionException
+	 *             if the writer is closed
+	 */
+	public Future<?> submit(final File file, final Runnable task) {
+		final FutureTask<Void> future = new FutureTask<>(task, null);
+		// tracked before it can run, so the removal never precedes it
+		synchronized (pending) {
+			pending.put(file, future);
+			try {
+				executor.execute(() -> {
+					future.run();
+					pending.remove(file, future);
+				});
+			} catch (RejectedExecutionException e) {
+				pending.remove(file, future);
+				throw e;
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Wait for the pending writes of the highscore file<br>
+	 * Writes of other files are only waited for if queued before
+	 *
+	 * @param file
+	 *            Highscore file
+	 */
+	public void await(final File file) {
+		Future<?> future = pending.get(file);
+		if (future != null)
+			await(future);
+	}
+
+	/**
+	 * Wait for all pending writes
+	 */
+	public void flush() {
+		try {
+			await(executor.submit(() -> {
+			}));
+		} catch (RejectedExecutionException e) {
+			// closed, nothing pending
+		}
+	}
+
+	/**
+	 * Wait for the write to finish, at most {@value #FLUSH_TIMEOUT_MS} ms
+	 *
+	 * @param future
+	 *            Write
+	 */
+	private void await(final Future<?> future) {
+		try {
+			future.get(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("Highscore write failed: ", e.getCause());
+		} catch (TimeoutException e) {
+			logger.warn("Unable to wait for highscore writes: ", e);
+		}
+	}
+
+	/**
+	 * Write all pending writes & stop the writer thread<br>
+	 * Waits at most {@value #FLUSH_TIMEOUT_MS} ms, writes submitted afterwards
+	 * are rejected
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+				logger.warn("Highscore writes not finished in time");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreJournal.Durability;
+
+/**
+ * Leaderboards per map<br>
+ * Every map has its own highscore, keyed by the content hash of the map file
+ * and stored in its own shard file. Shards are only loaded when first asked
+ * for, so unplayed or unviewed maps cost nothing. The game prefetches the
+ * shard of the running level, so entering a score doesn't wait for disk.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LeaderboardStore {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private static final String SUFFIX = ".hsc";
+
+	private final File dir;
+	private final int maxEntries;
+	private final Durability durability;
+	private final HighscoreWriter writer;
+	// by map hash
+	private final HashMap<String, HighscoreLib> shards = new HashMap<>();
+	private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "leaderboard-load");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Creates a new LeaderboardStore
+	 *
+	 * @param dir
+	 *            Shard directory, created on first use
+	 * @param maxEntries
+	 *            Maximum entries per leaderboard
+	 * @param durability
+	 *            Durability of the background writes
+	 */
+	public LeaderboardStore(final File dir, final int maxEntries, final Durability durability) {
+		this(dir, maxEntries, durability, HighscoreWriter.getDefault());
+	}
+
+	/**
+	 * Creates a new LeaderboardStore
+	 *
+	 * @param dir
+	 *            Shard directory, created on first use
+	 * @param maxEntries
+	 *            Maximum entries per leaderboard
+	 * @param durability
+	 *            Durability of the background writes
+	 * @param writer
+	 *            Writer doing the background writes of all shards
+	 */
+	public LeaderboardStore(final File dir, final int maxEntries, final Durability durability,
+			final HighscoreWriter writer) {
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+		this.durability = durability;
+		this.writer = writer;
+	}
+
+	/**
+	 * Returns the leaderboard of the map, loading its shard if required
+	 *
+	 * @param hash
+	 *            Content hash of the map, see {@link MapCatalog.Entry#getHash()}
+	 * @return HighscoreLib
+	 */
+	public synchronized HighscoreLib get(final String hash) {
+		HighscoreLib shard = shards.get(hash);
+		if (shard == null) {
+			if (!hash.matches("[0-9a-f]+"))
+				throw new IllegalArgumentException("Invalid map hash: " + hash);
+			if (!dir.exists() && !dir.mkdirs())
+				logger.warn("Unable to create leaderboard dir {}", dir.getAbsolutePath());
+			shard = new HighscoreLib(getShardFile(hash), maxEntries, durability, writer);
+			shards.put(hash, shard);
+			logger.debug("Loaded leaderboard {}", hash);
+		}
+		return shard;
+	}
+
+	/**
+	 * Load the leaderboard of the map in the background
+	 *
+	 * @param hash
+	 *            Content hash of the map, see {@link MapCatalog.Entry#getHash()}
+	 * @return Future of the leaderboard, see {@link #get(String)}
+	 */
+	public Future<HighscoreLib> prefetch(final String hash) {
+		return loader.submit(() -> get(hash));
+	}
+
+	/**
+	 * Returns the leaderboard of the map, loading its shard if required
+	 *
+	 * @param map
+	 *            Catalog entry of the map
+	 * @return HighscoreLib
+	 */
+	public HighscoreLib get(final MapCatalog.Entry map) {
+		return get(map.getHash());
+	}
+
+	/**
+	 * Returns whether the map has a stored leaderboard, without loading it<br>
+	 * Waits for pending writes of the shard, which may still create it.
+	 *
+	 * @param hash
+	 *            Content hash of the map
+	 * @return true if a shard or its journal exists
+	 */
+	public synchronized boolean exists(final String hash) {
+		if (shards.containsKey(hash))
+			return true;
+		File file = getShardFile(hash);
+		writer.await(file);
+		String prefix = file.getName();
+		String[] files = dir.list((d, name) -> name.startsWith(prefix));
+		return files != null && files.length > 0;
+	}
+
+	/**
+	 * Returns the amount of loaded shards
+	 *
+	 * @return int loaded leaderboards
+	 */
+	public synchronized int getLoadedCount() {
+		return shards.size();
+	}
+
+	/**
+	 * Returns the shard file of the map
+	 *
+	 * @param hash
+	 *            Content hash of the map
+	 * @return File
+	 */
+	private File getShardFile(final String hash) {
+		return new File(dir, hash + SUFFIX);
+	}
+}
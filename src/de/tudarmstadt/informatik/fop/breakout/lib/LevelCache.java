@@ -0,0 +1,234 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cache of compiled levels<br>
+ * Entries are keyed by the content hash of the map file and the screen size,
+ * so replaying a level skips parsing and layout. Recently used layouts are
+ * kept in memory, optionally backed by a disk cache.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LevelCache {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private static final int MAGIC = 0x4c564c43; // "LVLC"
+	private static final short VERSION = 1;
+	private static final String SUFFIX = ".level";
+	// bytes of the header & of each block record
+	private static final int HEADER_SIZE = 31;
+	private static final int BLOCK_SIZE = 17;
+
+	private final MapLoader mapLoader;
+	private final File dir;
+	private final LinkedHashMap<String, LevelLayout> layouts;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Creates a new LevelCache
+	 *
+	 * @param mapLoader
+	 *            MapLoader to compile missing levels with
+	 * @param capacity
+	 *            Amount of layouts kept in memory
+	 * @param dir
+	 *            Disk cache directory, created if missing, null for memory
+	 *            only
+	 */
+	public LevelCache(final MapLoader mapLoader, final int capacity, final File dir) {
+		this.mapLoader = mapLoader;
+		this.dir = dir;
+		this.layouts = new LinkedHashMap<String, LevelLayout>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(java.util.Map.Entry<String, LevelLayout> eldest) {
+				return size() > capacity;
+			}
+		};
+		if (dir != null && !dir.exists() && !dir.mkdirs())
+			logger.warn("Unable to create level cache dir {}", dir.getAbsolutePath());
+	}
+
+	/**
+	 * Returns the compiled level of the map file<br>
+	 * Compiles and caches it on a miss. Can be called from any thread.
+	 *
+	 * @param file
+	 *            Map file
+	 * @return LevelLayout or null if the map couldn't be loaded, never cached
+	 */
+	public LevelLayout compile(final File file) {
+		String key;
+		try {
+			key = getKey(ContentHash.of(file));
+		} catch (IOException e) {
+			logger.warn("Unable to hash map {}, not caching", file, e);
+			return mapLoader.compile(new Map(file, true));
+		}
+		LevelLayout layout;
+		synchronized (this) {
+			layout = layouts.get(key);
+		}
+		if (layout == null && dir != null)
+			layout = read(new File(dir, key + SUFFIX), file);
+		if (layout != null) {
+			synchronized (this) {
+				hits++;
+				layouts.put(key, layout);
+			}
+			mapLoader.preloadTheme(layout.map);
+			logger.debug("Level cache hit for {}", file);
+			return layout;
+		}
+
+		layout = mapLoader.compile(new Map(file, true));
+		if (layout == null)
+			return null;
+		synchronized (this) {
+			misses++;
+			layouts.put(key, layout);
+		}
+		if (dir != null)
+			write(new File(dir, key + SUFFIX), layout);
+		return layout;
+	}
+
+	/**
+	 * Returns the cache key of the map hash for the current screen
+	 *
+	 * @param hash
+	 *            Map content hash
+	 * @return String key
+	 */
+	private String getKey(final String hash) {
+		return hash + "_" + mapLoader.getWidth() + "x" + mapLoader.getHeight();
+	}
+
+	/**
+	 * Read a compiled level from disk
+	 *
+	 * @param entry
+	 *            Cache file
+	 * @param mapFile
+	 *            Map file of the level
+	 * @return LevelLayout or null if not cached, truncated or invalid
+	 */
+	private LevelLayout read(final File entry, final File mapFile) {
+		if (!entry.exists())
+			return null;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(entry.toPath()));
+			if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION)
+				throw new IOException("Invalid header");
+			Map map = new Map(mapFile, true);
+			map.setBallVelocity(buffer.getFloat());
+			map.setGravity(buffer.getFloat());
+			map.setTheme(buffer.getInt());
+			int columns = buffer.getInt();
+			int rows = buffer.getInt();
+			boolean chunked = buffer.get() != 0;
+			int blockCount = buffer.getInt();
+			// validated before allocating anything
+			if (columns < 0 || rows < 0)
+				throw new IOException("Invalid grid size " + columns + "x" + rows);
+			long cells = (long) columns * rows;
+			if (blockCount < 0 || blockCount > cells)
+				throw new IOException("Invalid block count " + blockCount);
+			if (buffer.remaining() < cells + (long) blockCount * BLOCK_SIZE)
+				throw new IOException("Truncated entry");
+			MapGrid grid = new MapGrid(columns, rows);
+			buffer.get(grid.getCells());
+			map.setGrid(grid);
+			LevelLayout layout = new LevelLayout(map, columns, rows, blockCount, chunked);
+			for (int i = 0; i < blockCount; i++) {
+				layout.cellX[i] = buffer.getInt();
+				layout.cellY[i] = buffer.getInt();
+				if (layout.cellX[i] < 0 || layout.cellX[i] >= columns || layout.cellY[i] < 0
+						|| layout.cellY[i] >= rows)
+					throw new IOException("Block outside of the grid");
+				layout.posX[i] = buffer.getFloat();
+				layout.posY[i] = buffer.getFloat();
+				layout.lives[i] = buffer.get();
+			}
+			return layout;
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			logger.warn("Invalid level cache entry {}, recreating", entry, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the compiled level to disk
+	 *
+	 * @param entry
+	 *            Cache file
+	 * @param layout
+	 *            LevelLayout
+	 */
+	private void write(final File entry, final LevelLayout layout) {
+		MapGrid grid = layout.map.getGrid();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + grid.getCells().length + layout.blockCount * BLOCK_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putFloat(layout.map.getBallVelocity());
+		buffer.putFloat(layout.map.getGravity());
+		buffer.putInt(layout.map.getTheme());
+		buffer.putInt(layout.columns);
+		buffer.putInt(layout.rows);
+		buffer.put((byte) (layout.chunked ? 1 : 0));
+		buffer.putInt(layout.blockCount);
+		buffer.put(grid.getCells());
+		for (int i = 0; i < layout.blockCount; i++) {
+			buffer.putInt(layout.cellX[i]);
+			buffer.putInt(layout.cellY[i]);
+			buffer.putFloat(layout.posX[i]);
+			buffer.putFloat(layout.posY[i]);
+			buffer.put((byte) layout.lives[i]);
+		}
+		buffer.flip();
+		try (AtomicFileWriter writer = new AtomicFileWriter(entry)) {
+			writer.write(buffer);
+			writer.commit();
+		} catch (IOException e) {
+			logger.warn("Unable to write level cache entry {}", entry, e);
+		}
+	}
+
+	/**
+	 * Drop all layouts kept in memory
+	 */
+	public synchronized void clear() {
+		layouts.clear();
+	}
+
+	/**
+	 * Returns the amount of cache hits
+	 *
+	 * @return int hits
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the amount of cache misses
+	 *
+	 * @return int misses
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,409 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Seeded procedural level generator<br>
+ * Every level is determined by the seed of the generator and its index, so
+ * levels can be generated again at any time instead of shipping files.<br>
+ * Usage as tool: <code>LevelGenerator seed count output_dir</code>, writes all
+ * finishable candidates as binary maps.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LevelGenerator {
+	private final static Logger logger = LogManager.getLogger();
+
+	public static final int WIDTH = 16;
+	public static final int HEIGHT = 10;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Symmetry of a generated level
+	 */
+	public enum Symmetry {
+		NONE, MIRROR_X, MIRROR_Y, MIRROR_XY
+	}
+
+	/**
+	 * Block pattern of a generated level
+	 */
+	public enum Pattern {
+		NOISE, ROWS, FRAMES, DIAMOND
+	}
+
+	private final long seed;
+	// relative weight of lives 1 to MAX_BLOCK_LIFE
+	private volatile int[] lifeWeights = { 8, 4, 2, 1 };
+	private volatile float undestroyableChance = 0.04f;
+	private volatile float minDensity = 0.35f;
+	private volatile float maxDensity = 0.85f;
+
+	/**
+	 * Creates a new LevelGenerator
+	 *
+	 * @param seed
+	 *            Seed of all levels
+	 */
+	public LevelGenerator(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Generate the grid of the level
+	 *
+	 * @param index
+	 *            Level index
+	 * @return MapGrid of {@value #WIDTH}x{@value #HEIGHT}
+	 */
+	public MapGrid generateGrid(final long index) {
+		Random random = levelRandom(index);
+		Symmetry symmetry = Symmetry.values()[random.nextInt(Symmetry.values().length)];
+		Pattern pattern = Pattern.values()[random.nextInt(Pattern.values().length)];
+		float density = minDensity + random.nextFloat() * (maxDensity - minDensity);
+		boolean gradient = random.nextBoolean(); // harder blocks on top
+		int[] weights = lifeWeights;
+
+		// fill the fundamental domain, mirrored afterwards
+		boolean mirrorX = symmetry == Symmetry.MIRROR_X || symmetry == Symmetry.MIRROR_XY;
+		boolean mirrorY = symmetry == Symmetry.MIRROR_Y || symmetry == Symmetry.MIRROR_XY;
+		int domainWidth = mirrorX ? (WIDTH + 1) / 2 : WIDTH;
+		int domainHeight = mirrorY ? (HEIGHT + 1) / 2 : HEIGHT;
+		MapGrid grid = new MapGrid(WIDTH, HEIGHT);
+		float[] rowChance = new float[HEIGHT];
+		for (int y = 0; y < HEIGHT; y++)
+			rowChance[y] = random.nextFloat();
+		for (int y = 0; y < domainHeight; y++) {
+			for (int x = 0; x < domainWidth; x++) {
+				if (!isBlock(pattern, x, y, density, rowChance[y], random))
+					continue;
+				int value;
+				if (random.nextFloat() < undestroyableChance)
+					value = -1;
+				else if (gradient)
+					value = Math.max(1, ThemeManager.MAX_BLOCK_LIFE - y * ThemeManager.MAX_BLOCK_LIFE / HEIGHT);
+				else
+					value = pickLife(weights, random);
+				grid.set(x, y, value);
+				if (mirrorX)
+					grid.set(WIDTH - 1 - x, y, value);
+			}
+		}
+		if (mirrorY) {
+			int[] row = new int[WIDTH];
+			for (int y = 0; y < domainHeight; y++) {
+				grid.getRow(y, row);
+				grid.setRow(HEIGHT - 1 - y, row);
+			}
+		}
+		if (grid.count(0) + grid.count(-1) == WIDTH * HEIGHT) { // no destroyable block
+			// mirrored as well, keeps the symmetry
+			int x = WIDTH / 2;
+			int y = HEIGHT / 2;
+			grid.set(x, y, 1);
+			grid.set(mirrorX ? WIDTH - 1 - x : x, y, 1);
+			grid.set(x, mirrorY ? HEIGHT - 1 - y : y, 1);
+			grid.set(mirrorX ? WIDTH - 1 - x : x, mirrorY ? HEIGHT - 1 - y : y, 1);
+		}
+		return grid;
+	}
+
+	/**
+	 * Returns the symmetry of the level
+	 *
+	 * @param index
+	 *            Level index
+	 * @return Symmetry used by {@link #generateGrid(long)}
+	 */
+	public Symmetry getSymmetry(final long index) {
+		return Symmetry.values()[levelRandom(index).nextInt(Symmetry.values().length)];
+	}
+
+	/**
+	 * Returns the random source of the level grid
+	 */
+	private Random levelRandom(final long index) {
+		return new Random(mix(seed + index * GOLDEN_GAMMA));
+	}
+
+	/**
+	 * Returns whether the cell of the fundamental domain is a block
+	 */
+	private static boolean isBlock(final Pattern pattern, final int x, final int y, final float density,
+			final float rowChance, final Random random) {
+		switch (pattern) {
+		case ROWS:
+			return rowChance < density;
+		case FRAMES:
+			// concentric rectangles, every second one filled
+			int ring = Math.min(Math.min(x, WIDTH - 1 - x), Math.min(y, HEIGHT - 1 - y));
+			return ring % 2 == 0 && random.nextFloat() < density + 0.2f;
+		case DIAMOND:
+			float dx = Math.abs(x - (WIDTH - 1) / 2f) / (WIDTH / 2f);
+			float dy = Math.abs(y - (HEIGHT - 1) / 2f) / (HEIGHT / 2f);
+			return dx + dy < density * 1.2f;
+		case NOISE:
+		default:
+			return random.nextFloat() < density;
+		}
+	}
+
+	/**
+	 * Returns a life picked by the weights
+	 */
+	private static int pickLife(final int[] weights, final Random random) {
+		int total = 0;
+		for (int w : weights)
+			total += w;
+		int pick = random.nextInt(total);
+		for (int i = 0; i < weights.length; i++) {
+			pick -= weights[i];
+			if (pick < 0)
+				return i + 1;
+		}
+		return 1;
+	}
+
+	/**
+	 * Generate the level as map
+	 *
+	 * @param index
+	 *            Level index
+	 * @param file
+	 *            File of the map, not written
+	 * @return Map
+	 */
+	public Map generate(final long index, final File file) {
+		return createMap(index, generateGrid(index), file);
+	}
+
+	/**
+	 * Create the map of an already generated level
+	 *
+	 * @param candidate
+	 *            Level from {@link #generateBatch(long, int, int)}
+	 * @param file
+	 *            File of the map, not written
+	 * @return Map
+	 */
+	public Map generate(final Candidate candidate, final File file) {
+		return createMap(candidate.getIndex(), candidate.getGrid().copy(), file);
+	}
+
+	/**
+	 * Create the map with the level settings of the index
+	 */
+	private Map createMap(final long index, final MapGrid grid, final File file) {
+		Map map = new Map(file, false);
+		map.setGrid(grid);
+		Random random = new Random(mix(~seed + index * GOLDEN_GAMMA));
+		map.setBallVelocity(4 + random.nextInt(3));
+		map.setTheme(0);
+		return map;
+	}
+
+	/**
+	 * Generate and measure the levels in parallel
+	 *
+	 * @param first
+	 *            Index of the first level
+	 * @param count
+	 *            Amount of levels, not negative
+	 * @param threads
+	 *            Amount of threads to use, at least 1
+	 * @return ArrayList<Candidate> candidates in index order
+	 */
+	public ArrayList<Candidate> generateBatch(final long first, final int count, final int threads) {
+		if (count < 0)
+			throw new IllegalArgumentException("Negative amount of levels: " + count);
+		if (threads < 1)
+			throw new IllegalArgumentException("Invalid amount of threads: " + threads);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			// one slice per thread & some more for balancing
+			int slices = Math.min(count, threads * 4);
+			List<Future<ArrayList<Candidate>>> futures = new ArrayList<>(slices);
+			for (int s = 0; s < slices; s++) {
+				final long start = first + (long) count * s / slices;
+				final long end = first + (long) count * (s + 1) / slices;
+				futures.add(executor.submit(() -> {
+					ArrayList<Candidate> result = new ArrayList<>((int) (end - start));
+					for (long i = start; i < end; i++) {
+						MapGrid grid = generateGrid(i);
+						result.add(new Candidate(i, grid, MapMetrics.measure(grid)));
+					}
+					return result;
+				}));
+			}
+			ArrayList<Candidate> candidates = new ArrayList<>(count);
+			for (Future<ArrayList<Candidate>> f : futures)
+				candidates.addAll(f.get());
+			return candidates;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new ArrayList<>();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Level generation failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Set the relative weights of the block lives
+	 *
+	 * @param weights
+	 *            Weight per life, starting at life 1
+	 */
+	public void setLifeWeights(final int... weights) {
+		if (weights.length == 0 || weights.length > ThemeManager.MAX_BLOCK_LIFE)
+			throw new IllegalArgumentException("Invalid amount of life weights: " + weights.length);
+		int total = 0;
+		for (int w : weights) {
+			if (w < 0)
+				throw new IllegalArgumentException("Negative life weight: " + w);
+			total += w;
+		}
+		if (total == 0)
+			throw new IllegalArgumentException("No life weight set");
+		this.lifeWeights = weights.clone();
+	}
+
+	/**
+	 * Set the chance of a block being undestroyable
+	 *
+	 * @param chance
+	 *            between 0 and 1
+	 */
+	public void setUndestroyableChance(final float chance) {
+		if (chance < 0 || chance > 1)
+			throw new IllegalArgumentException("Invalid undestroyable chance: " + chance);
+		this.undestroyableChance = chance;
+	}
+
+	/**
+	 * Set the range of the block density
+	 *
+	 * @param min
+	 *            Minimum density between 0 and 1
+	 * @param max
+	 *            Maximum density between min and 1
+	 */
+	public void setDensity(final float min, final float max) {
+		if (min < 0 || max > 1 || min > max)
+			throw new IllegalArgumentException("Invalid density range: " + min + "-" + max);
+		this.minDensity = min;
+		this.maxDensity = max;
+	}
+
+	/**
+	 * Returns the seed of this generator
+	 *
+	 * @return long seed
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Spread the bits of the value, so neighbouring indices get unrelated
+	 * random sequences
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Generated level with its metrics
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public static class Candidate {
+		private final long index;
+		private final MapGrid grid;
+		private final MapMetrics metrics;
+
+		private Candidate(final long index, final MapGrid grid, final MapMetrics metrics) {
+			this.index = index;
+			this.grid = grid;
+			this.metrics = metrics;
+		}
+
+		/**
+		 * Returns the level index
+		 *
+		 * @return long index
+		 */
+		public long getIndex() {
+			return index;
+		}
+
+		/**
+		 * Returns the grid of the level
+		 *
+		 * @return MapGrid
+		 */
+		public MapGrid getGrid() {
+			return grid;
+		}
+
+		/**
+		 * Returns the metrics of the level
+		 *
+		 * @return MapMetrics
+		 */
+		public MapMetrics getMetrics() {
+			return metrics;
+		}
+	}
+
+	/**
+	 * Command line entry point
+	 *
+	 * @param args
+	 *            seed count output_dir
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.err.println("Usage: LevelGenerator seed count output_dir");
+			System.exit(1);
+		}
+		LevelGenerator generator = new LevelGenerator(Long.parseLong(args[0]));
+		int count = Integer.parseInt(args[1]);
+		File output = new File(args[2]);
+		if (!output.exists() && !output.mkdirs()) {
+			logger.error("Unable to create {}", output);
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		ArrayList<Candidate> candidates = generator.generateBatch(0, count, Runtime.getRuntime()
+				.availableProcessors());
+		logger.info("Generated {} levels in {} ms", candidates.size(), (System.nanoTime() - start) / 1000000);
+		boolean ok = true;
+		int written = 0;
+		for (Candidate c : candidates) {
+			if (!c.getMetrics().isFinishable())
+				continue;
+			File file = new File(output, "generated" + c.getIndex() + MapCatalog.MAP_SUFFIX);
+			ok &= generator.generate(c, file).writeBinary(file);
+			written++;
+		}
+		logger.info("Wrote {} finishable levels to {}", written, output);
+		System.exit(ok ? 0 : 1);
+	}
+}
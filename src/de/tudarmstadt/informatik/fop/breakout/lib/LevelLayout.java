@@ -0,0 +1,55 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+/**
+ * Compiled level, ready to be instantiated<br>
+ * Contains the positions and lives of all blocks of a map. Created without
+ * GL context, so it can be prepared on any thread, see
+ * {@link MapLoader#compile(Map)}.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LevelLayout {
+	public final Map map;
+	// size of the map grid
+	public final int columns;
+	public final int rows;
+	public final int blockCount;
+	// too many rows for the screen, blocks are streamed by a ChunkedLevel
+	public final boolean chunked;
+	// per block, in grid order
+	public final int[] cellX;
+	public final int[] cellY;
+	public final float[] posX;
+	public final float[] posY;
+	public final int[] lives;
+	// image handles per block life, resolved on the first instantiation
+	int[] blockHandles;
+
+	/**
+	 * Creates a new LevelLayout with space for the specified amount of blocks
+	 *
+	 * @param map
+	 *            Loaded map
+	 * @param columns
+	 *            Columns of the map grid
+	 * @param rows
+	 *            Rows of the map grid
+	 * @param blockCount
+	 *            Amount of blocks, 0 for chunked levels
+	 * @param chunked
+	 *            Whether the level is streamed, see {@link ChunkedLevel}
+	 */
+	LevelLayout(final Map map, final int columns, final int rows, final int blockCount, final boolean chunked) {
+		this.map = map;
+		this.columns = columns;
+		this.rows = rows;
+		this.blockCount = blockCount;
+		this.chunked = chunked;
+		cellX = new int[blockCount];
+		cellY = new int[blockCount];
+		posX = new float[blockCount];
+		posY = new float[blockCount];
+		lives = new int[blockCount];
+	}
+}
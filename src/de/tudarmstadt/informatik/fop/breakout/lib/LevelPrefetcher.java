@@ -0,0 +1,106 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Prefetches the next level in the background<br>
+ * Compiles the map into a {@link LevelLayout} while the current level is
+ * running, so the level switch only has to instantiate the blocks.<br>
+ * Not thread safe, only to be used from the game thread.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LevelPrefetcher {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private final LevelCache levelCache;
+	private final ExecutorService executor;
+	private File file = null;
+	private Future<LevelLayout> future = null;
+
+	/**
+	 * Creates a new LevelPrefetcher
+	 *
+	 * @param levelCache
+	 *            LevelCache to compile the maps with
+	 */
+	public LevelPrefetcher(final LevelCache levelCache) {
+		this.levelCache = levelCache;
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "level-prefetch");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Start compiling the specified map in the background<br>
+	 * Replaces any other prefetched map
+	 *
+	 * @param mapFile
+	 *            Map file
+	 */
+	public void prefetch(final File mapFile) {
+		if (mapFile.equals(file))
+			return;
+		cancel();
+		file = mapFile;
+		future = executor.submit(() -> levelCache.compile(mapFile));
+		logger.debug("Prefetching {}", mapFile);
+	}
+
+	/**
+	 * Take the layout of the prefetched map, waiting for it if still compiling
+	 *
+	 * @param mapFile
+	 *            Map file
+	 * @return LevelLayout or null if the map wasn't prefetched or failed
+	 */
+	public LevelLayout take(final File mapFile) {
+		if (!mapFile.equals(file)) {
+			cancel();
+			return null;
+		}
+		Future<LevelLayout> f = future;
+		file = null;
+		future = null;
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.warn("Prefetch of {} failed", mapFile, e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Drop the prefetched map
+	 */
+	public void cancel() {
+		if (future != null)
+			future.cancel(true);
+		file = null;
+		future = null;
+	}
+
+	/**
+	 * Stop the prefetch thread
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+}
@@ -1,12 +1,9 @@
 package de.tudarmstadt.informatik.fop.breakout.lib;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.stream.Collectors;
@@ -15,7 +12,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Map Object
+ * Map Object<br>
+ * Stored as CSV text or in the {@link BinaryMapFormat}, detected on load.
+ * Maps are written in the format they were loaded from.
  * 
  * @author Aron Heinecke
  *
@@ -25,18 +24,19 @@ public class Map {
 	private Logger logger = LogManager.getLogger(this);
 
 	private final File file;
-	// Column<Row<int>>
-	private ArrayList<ArrayList<Integer>> map = new ArrayList<>();
+	// guards the grid & file
+	private final Object lock = new Object();
+	private MapGrid grid = new MapGrid(0, 0);
 	// Gravity for this map
 	private float gravity = 0;
 	// Theme for this map
 	private int theme = 0;
 	// default ball velocity for this map
 	private float ballVelocity = 5;
-	// maximum elements per row, this map has
-	private int maxRowLength = 0;
 
 	private final boolean readOnly;
+	// write in binary format
+	private boolean binary = false;
 
 	private static final int POS_VEL = 0;
 	private static final int POS_THEME = 1;
@@ -73,10 +73,13 @@ public class Map {
 	 * @return true on success
 	 */
 	public boolean load() {
-		synchronized (map) {
+		if (BinaryMapFormat.isBinary(file))
+			return loadBinary();
+		synchronized (lock) {
 			String line = "";
-			map.clear();
-			maxRowLength = 0;
+			binary = false;
+			ArrayList<int[]> rows = new ArrayList<>();
+			int maxRowLength = 0;
 			try (BufferedReader br = new BufferedReader(new FileReader(file))) {
 				boolean passedData = false;
 				while ((line = br.readLine()) != null) {
@@ -94,33 +97,56 @@ public class Map {
 					} else if (line.equals(";")) { // detect custom data switch
 						passedData = true;
 					} else { // parse normal map data
-						ArrayList<Integer> pRow = parseIntDataLine(line);
-						map.add(pRow);
-						if (maxRowLength < pRow.size())
-							maxRowLength = pRow.size();
+						int[] pRow = parseIntDataLine(line);
+						rows.add(pRow);
+						if (maxRowLength < pRow.length)
+							maxRowLength = pRow.length;
 					}
 				}
+				MapGrid loaded = new MapGrid(maxRowLength, rows.size());
+				for (int y = 0; y < rows.size(); y++)
+					loaded.setRow(y, rows.get(y));
+				grid = loaded;
 				return true;
 			} catch (IOException e) {
 				logger.error("Unable to read map file: ", e);
-			} catch (NumberFormatException e) {
+			} catch (IllegalArgumentException e) { // includes NumberFormatException
 				logger.error("Malformed map file\nLine:{}\n{}", line, e);
 			}
 			return false;
 		}
 	}
 
+	/**
+	 * Load the map from a binary file
+	 * 
+	 * @return true on success
+	 */
+	private boolean loadBinary() {
+		synchronized (lock) {
+			try {
+				BinaryMapFormat.read(file, this);
+				binary = true;
+				return true;
+			} catch (IOException e) {
+				logger.error("Unable to read binary map file: ", e);
+			}
+			return false;
+		}
+	}
+
 	/**
 	 * Delete the file of this map
 	 */
 	public void deleteFile() {
-		synchronized (map) {
+		synchronized (lock) {
 			this.file.delete();
 		}
 	}
 
 	/**
-	 * Write map to file
+	 * Write map to file<br>
+	 * The file is replaced atomically, see {@link AtomicFileWriter}
 	 * 
 	 * @return true on success
 	 */
@@ -128,30 +154,11 @@ public class Map {
 		if (this.readOnly) {
 			return false;
 		}
-		synchronized (map) {
-			try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, false)))) {
-				// map data
-				for (ArrayList<Integer> row : map) {
-					int start = row.remove(0);
-					bw.write(row.stream().map((s) -> Integer.toString(s)).reduce(Integer.toString(start),
-							(x, y) -> x + "," + y));
-					bw.newLine();
-				}
-
-				// custom data
-				bw.write(";");
-				bw.newLine();
-
-				String[] cData = new String[3];
-				cData[POS_GRAV] = Float.toString(this.getGravity());
-				cData[POS_VEL] = Float.toString(this.getBallVelocity());
-				cData[POS_THEME] = Integer.toString(this.getTheme());
-				for (String s : cData) {
-					bw.write(s);
-					bw.write(",");
-				}
-
-				bw.flush();
+		if (binary)
+			return writeBinary(file);
+		synchronized (lock) {
+			try {
+				AtomicFileWriter.writeText(file, this);
 				return true;
 			} catch (IOException e) {
 				logger.error("Unable to write map file: {} {}", file.getAbsolutePath(), e);
@@ -161,16 +168,65 @@ public class Map {
 	}
 
 	/**
-	 * Parses a line of map data as integers
+	 * Write map to the specified file in binary format<br>
+	 * Used to convert maps, ignores the read only flag
+	 * 
+	 * @param target
+	 *            File to write
+	 * @return true on success
+	 */
+	public boolean writeBinary(final File target) {
+		synchronized (lock) {
+			try {
+				BinaryMapFormat.write(target, this);
+				return true;
+			} catch (IOException e) {
+				logger.error("Unable to write binary map file: {} {}", target.getAbsolutePath(), e);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Parses a line of map data as integers, without intermediate objects<br>
+	 * Trailing separators are ignored, like {@link String#split(String)} does
 	 * 
 	 * @param line
-	 * @return ArrayList<Integer> map data
+	 * @return int[] map data
 	 * @throws NumberFormatException
 	 *             on malformed data
 	 */
-	private ArrayList<Integer> parseIntDataLine(final String line) throws NumberFormatException {
-		return Arrays.stream(line.split(",")).map(s -> Integer.parseInt(s))
-				.collect(Collectors.toCollection(ArrayList::new));
+	private int[] parseIntDataLine(final String line) throws NumberFormatException {
+		int length = line.length();
+		while (length > 0 && line.charAt(length - 1) == ',')
+			length--;
+		int count = 1;
+		for (int i = 0; i < length; i++) {
+			if (line.charAt(i) == ',')
+				count++;
+		}
+		int[] values = new int[count];
+		int pos = 0;
+		for (int n = 0; n < count; n++) {
+			boolean negative = pos < length && line.charAt(pos) == '-';
+			if (negative)
+				pos++;
+			int start = pos;
+			int value = 0;
+			for (; pos < length && line.charAt(pos) != ','; pos++) {
+				int digit = line.charAt(pos) - '0';
+				if (digit < 0 || digit > 9)
+					throw new NumberFormatException("Invalid character in: " + line);
+				if (value > (Integer.MAX_VALUE - digit) / 10)
+					throw new NumberFormatException("Value out of range in: " + line);
+				value = value * 10 + digit;
+			}
+			if (pos == start)
+				throw new NumberFormatException("Empty value in: " + line);
+			values[n] = negative ? -value : value;
+			pos++; // skip separator
+		}
+		return values;
 	}
 
 	/**
@@ -187,23 +243,76 @@ public class Map {
 	}
 
 	/**
-	 * Set map data
+	 * Set map data<br>
+	 * Compatibility method, copies the data into the grid
 	 * 
 	 * @param map
+	 *            Row<Column<int>>
 	 */
 	public void setMap(final ArrayList<ArrayList<Integer>> map) {
-		synchronized (map) {
-			this.map = map;
+		int width = 0;
+		for (ArrayList<Integer> row : map)
+			width = Math.max(width, row.size());
+		MapGrid data = new MapGrid(width, map.size());
+		for (int y = 0; y < map.size(); y++) {
+			ArrayList<Integer> row = map.get(y);
+			for (int x = 0; x < row.size(); x++)
+				data.set(x, y, row.get(x));
 		}
+		setGrid(data);
 	}
 
 	/**
-	 * Returns the Map data
+	 * Returns a copy of the Map data<br>
+	 * Compatibility method, use {@link #getGrid()} instead
 	 * 
-	 * @return
+	 * @return Row<Column<int>>
 	 */
 	public ArrayList<ArrayList<Integer>> getMap() {
-		return this.map;
+		synchronized (lock) {
+			ArrayList<ArrayList<Integer>> copy = new ArrayList<>(grid.getHeight());
+			for (int y = 0; y < grid.getHeight(); y++) {
+				ArrayList<Integer> row = new ArrayList<>(grid.getWidth());
+				for (int x = 0; x < grid.getWidth(); x++)
+					row.add(grid.get(x, y));
+				copy.add(row);
+			}
+			return copy;
+		}
+	}
+
+	/**
+	 * Returns the grid of this map
+	 * 
+	 * @return MapGrid
+	 */
+	public MapGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Set the grid of this map
+	 * 
+	 * @param grid
+	 *            MapGrid
+	 */
+	public void setGrid(final MapGrid grid) {
+		synchronized (lock) {
+			this.grid = grid;
+		}
+	}
+
+	/**
+	 * Returns the block at the specified position
+	 * 
+	 * @param column
+	 *            Index of the row list, as in {@link #getMap()}
+	 * @param row
+	 *            Index inside of the row list
+	 * @return int block value, 0 if out of bounds
+	 */
+	public int getBlock(final int column, final int row) {
+		return grid.get(row, column);
 	}
 
 	/**
@@ -211,25 +320,14 @@ public class Map {
 	 * If the column / row is out of bounds, the map will be increased
 	 * 
 	 * @param column
+	 *            Index of the row list, as in {@link #getMap()}
 	 * @param row
+	 *            Index inside of the row list
 	 * @param value
 	 */
 	public void setBlock(final int column, final int row, final int value) {
-		synchronized (map) {
-			if (map.size() <= column) {
-				for (int i = map.size(); i <= column; i++) {
-					map.add(new ArrayList<>());
-				}
-			}
-			ArrayList<Integer> col = map.get(column);
-			if (col.size() <= row) {
-				for (int i = col.size(); i <= row; i++) {
-					col.add(0);
-					if (col.size() > maxRowLength)
-						maxRowLength = col.size();
-				}
-			}
-			col.set(row, value);
+		synchronized (lock) {
+			grid.set(row, column, value);
 		}
 	}
 
@@ -305,7 +403,26 @@ public class Map {
 	 * @return the maxRowLength
 	 */
 	public int getMaxRowLength() {
-		return maxRowLength;
+		return grid.getWidth();
+	}
+
+	/**
+	 * Returns whether this map is stored in binary format
+	 * 
+	 * @return true for binary maps
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * Set whether this map is written in binary format
+	 * 
+	 * @param binary
+	 *            true for the binary format
+	 */
+	public void setBinary(final boolean binary) {
+		this.binary = binary;
 	}
 
 	/**
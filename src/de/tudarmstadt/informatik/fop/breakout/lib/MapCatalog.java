@@ -0,0 +1,395 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Catalog of all maps in a directory<br>
+ * Caches the metadata of every map in an index file, only maps changed since
+ * the last refresh (by modification time & size) are parsed again.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapCatalog {
+	private final Logger logger = LogManager.getLogger(this);
+
+	public static final String MAP_SUFFIX = ".map";
+	private static final String LEVEL_PREFIX = "level";
+	private static final String SEPARATOR = "\t";
+	private static final int FIELDS = 10;
+
+	private final File dir;
+	private final File indexFile;
+	// by map name, sorted
+	private final TreeMap<String, Entry> entries = new TreeMap<>();
+	private boolean indexLoaded = false;
+
+	/**
+	 * Creates a new MapCatalog
+	 *
+	 * @param dir
+	 *            Map directory
+	 * @param indexFile
+	 *            Index file to cache the metadata in
+	 */
+	public MapCatalog(final File dir, final File indexFile) {
+		this.dir = dir;
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Scan the map directory, parsing only new or changed maps<br>
+	 * Writes the index if anything changed
+	 */
+	public synchronized void refresh() {
+		if (!indexLoaded) {
+			readIndex();
+			indexLoaded = true;
+		}
+		File[] files = dir.listFiles((d, name) -> name.endsWith(MAP_SUFFIX));
+		if (files == null) {
+			logger.warn("Map directory {} not found", dir);
+			files = new File[0];
+		}
+		boolean changed = false;
+		HashMap<String, Entry> found = new HashMap<>();
+		for (File f : files) {
+			Entry e = entries.get(f.getName());
+			if (e == null || e.lastModified != f.lastModified() || e.size != f.length()) {
+				e = scan(f);
+				if (e == null)
+					continue;
+				changed = true;
+			}
+			found.put(f.getName(), e);
+		}
+		if (found.size() != entries.size())
+			changed = true;
+		entries.clear();
+		entries.putAll(found);
+		if (changed)
+			writeIndex();
+	}
+
+	/**
+	 * Parse the map and return its metadata
+	 *
+	 * @param file
+	 *            Map file
+	 * @return Entry or null if the map couldn't be read
+	 */
+	private Entry scan(final File file) {
+		try {
+			Entry e = new Entry(file.getName());
+			e.lastModified = file.lastModified();
+			e.size = file.length();
+			e.hash = ContentHash.of(file);
+			Map map = new Map(file, true);
+			if (!map.load())
+				return null;
+			MapGrid grid = map.getGrid();
+			e.width = grid.getWidth();
+			e.height = grid.getHeight();
+			e.theme = map.getTheme();
+			e.velocity = map.getBallVelocity();
+			e.gravity = map.getGravity();
+			grid.forEachBlock(new MapGrid.CellVisitor() {
+				@Override
+				public void visit(int x, int y, int value) {
+					Integer count = e.blockCounts.get(value);
+					e.blockCounts.put(value, count == null ? 1 : count + 1);
+				}
+			});
+			logger.debug("Indexed map {}", file);
+			return e;
+		} catch (IOException e) {
+			logger.warn("Unable to index map {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read the index file, if existing
+	 */
+	private void readIndex() {
+		if (!indexFile.exists())
+			return;
+		String line = "";
+		try (BufferedReader br = new BufferedReader(new FileReader(indexFile))) {
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] f = line.split(SEPARATOR, -1);
+				if (f.length != FIELDS) {
+					logger.warn("Invalid map index line: {}", line);
+					continue;
+				}
+				Entry e = new Entry(f[0]);
+				e.lastModified = Long.parseLong(f[1]);
+				e.size = Long.parseLong(f[2]);
+				e.hash = f[3];
+				e.width = Integer.parseInt(f[4]);
+				e.height = Integer.parseInt(f[5]);
+				e.theme = Integer.parseInt(f[6]);
+				e.velocity = Float.parseFloat(f[7]);
+				e.gravity = Float.parseFloat(f[8]);
+				if (!f[9].isEmpty()) {
+					for (String count : f[9].split(",")) {
+						String[] kv = count.split(":");
+						e.blockCounts.put(Integer.parseInt(kv[0]), Integer.parseInt(kv[1]));
+					}
+				}
+				entries.put(e.name, e);
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to read map index: ", e);
+		} catch (RuntimeException e) {
+			logger.warn("Malformed map index, rebuilding\nLine:{}", line, e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Write the index file<br>
+	 * Written to a temporary file first, so a crash never leaves a partial
+	 * index
+	 */
+	private void writeIndex() {
+		File parent = indexFile.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			logger.warn("Unable to create map index dir {}", parent);
+			return;
+		}
+		File tmp = new File(indexFile.getAbsolutePath() + ".tmp");
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(tmp))) {
+			bw.write("# Map catalog index, generated");
+			bw.newLine();
+			for (Entry e : entries.values()) {
+				StringBuilder sb = new StringBuilder();
+				sb.append(e.name).append(SEPARATOR).append(e.lastModified).append(SEPARATOR).append(e.size)
+						.append(SEPARATOR).append(e.hash).append(SEPARATOR).append(e.width).append(SEPARATOR)
+						.append(e.height).append(SEPARATOR).append(e.theme).append(SEPARATOR).append(e.velocity)
+						.append(SEPARATOR).append(e.gravity).append(SEPARATOR);
+				boolean first = true;
+				for (java.util.Map.Entry<Integer, Integer> count : e.blockCounts.entrySet()) {
+					if (!first)
+						sb.append(',');
+					sb.append(count.getKey()).append(':').append(count.getValue());
+					first = false;
+				}
+				bw.write(sb.toString());
+				bw.newLine();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write map index: ", e);
+			tmp.delete();
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			logger.warn("Unable to replace map index: ", e);
+		}
+	}
+
+	/**
+	 * Returns all maps, sorted by name
+	 *
+	 * @return ArrayList<Entry> entries
+	 */
+	public synchronized ArrayList<Entry> getEntries() {
+		return new ArrayList<>(entries.values());
+	}
+
+	/**
+	 * Returns the map with the specified name<br>
+	 * The suffix {@value #MAP_SUFFIX} is optional
+	 *
+	 * @param name
+	 *            Map name
+	 * @return Entry or null if not found
+	 */
+	public synchronized Entry get(final String name) {
+		Entry e = entries.get(name);
+		if (e == null && !name.endsWith(MAP_SUFFIX))
+			e = entries.get(name + MAP_SUFFIX);
+		return e;
+	}
+
+	/**
+	 * Returns the map file of the level
+	 *
+	 * @param level
+	 *            Level, starting at 1
+	 * @return File or null if there is no such level
+	 */
+	public synchronized File getLevel(final int level) {
+		Entry e = entries.get(LEVEL_PREFIX + level + MAP_SUFFIX);
+		return e == null ? null : e.getFile();
+	}
+
+	/**
+	 * Returns the amount of consecutive levels, starting at level 1
+	 *
+	 * @return int amount of levels
+	 */
+	public synchronized int getLevelCount() {
+		int count = 0;
+		while (entries.containsKey(LEVEL_PREFIX + (count + 1) + MAP_SUFFIX))
+			count++;
+		return count;
+	}
+
+	/**
+	 * Returns the amount of maps
+	 *
+	 * @return int size
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Catalog entry with the metadata of one map
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public class Entry {
+		private final String name;
+		private long lastModified;
+		private long size;
+		private String hash;
+		private int width;
+		private int height;
+		private int theme;
+		private float velocity;
+		private float gravity;
+		// block value -> amount
+		private final TreeMap<Integer, Integer> blockCounts = new TreeMap<>();
+
+		private Entry(final String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the file name of the map
+		 *
+		 * @return String name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the map file
+		 *
+		 * @return File
+		 */
+		public File getFile() {
+			return new File(dir, name);
+		}
+
+		/**
+		 * Returns the SHA-1 hash of the map file content
+		 *
+		 * @return String hex hash
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * Returns the amount of cells per row
+		 *
+		 * @return int width
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * Returns the amount of rows
+		 *
+		 * @return int height
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * Returns the theme of the map
+		 *
+		 * @return int theme
+		 */
+		public int getTheme() {
+			return theme;
+		}
+
+		/**
+		 * Returns the default ball velocity of the map
+		 *
+		 * @return float velocity
+		 */
+		public float getBallVelocity() {
+			return velocity;
+		}
+
+		/**
+		 * Returns the gravity of the map
+		 *
+		 * @return float gravity
+		 */
+		public float getGravity() {
+			return gravity;
+		}
+
+		/**
+		 * Returns the amount of blocks with the specified life
+		 *
+		 * @param life
+		 *            Block life, -1 for undestroyable blocks
+		 * @return int amount
+		 */
+		public int getBlockCount(final int life) {
+			Integer count = blockCounts.get(life);
+			return count == null ? 0 : count;
+		}
+
+		/**
+		 * Returns the amount of destroyable blocks
+		 *
+		 * @return int amount
+		 */
+		public int getDestroyableBlockCount() {
+			int count = 0;
+			for (java.util.Map.Entry<Integer, Integer> e : blockCounts.tailMap(1).entrySet())
+				count += e.getValue();
+			return count;
+		}
+
+		/**
+		 * Returns the block counts by life
+		 *
+		 * @return java.util.Map<Integer, Integer> life -> amount
+		 */
+		public java.util.Map<Integer, Integer> getBlockCounts() {
+			return Collections.unmodifiableMap(blockCounts);
+		}
+	}
+}
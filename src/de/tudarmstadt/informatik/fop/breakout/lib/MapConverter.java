@@ -0,0 +1,71 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tool to convert text maps to the {@link BinaryMapFormat}<br>
+ * Usage: <code>MapConverter input.map output.map</code> or
+ * <code>MapConverter -dir input_dir output_dir</code>
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapConverter {
+	private final static Logger logger = LogManager.getLogger();
+
+	/**
+	 * Command line entry point
+	 *
+	 * @param args
+	 *            input output, or -dir input_dir output_dir
+	 */
+	public static void main(String[] args) {
+		boolean dir = args.length > 0 && args[0].equals("-dir");
+		int first = dir ? 1 : 0;
+		if (args.length - first != 2) {
+			System.err.println("Usage: MapConverter [-dir] input output");
+			System.exit(1);
+		}
+		File input = new File(args[first]);
+		File output = new File(args[first + 1]);
+		boolean ok = true;
+		if (dir) {
+			File[] files = input.listFiles((d, name) -> name.endsWith(".map"));
+			if (files == null) {
+				logger.error("Not a directory: {}", input);
+				System.exit(1);
+			}
+			if (!output.exists() && !output.mkdirs()) {
+				logger.error("Unable to create {}", output);
+				System.exit(1);
+			}
+			for (File f : files)
+				ok &= convert(f, new File(output, f.getName()));
+		} else {
+			ok = convert(input, output);
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	/**
+	 * Convert a map to the binary format
+	 *
+	 * @param input
+	 *            map file
+	 * @param output
+	 *            binary map file, may be the input file
+	 * @return true on success
+	 */
+	public static boolean convert(final File input, final File output) {
+		Map map = new Map(input, true);
+		if (!map.load())
+			return false;
+		if (!map.writeBinary(output))
+			return false;
+		logger.info("Converted {} to {}", input, output);
+		return true;
+	}
+}
@@ -0,0 +1,285 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.Arrays;
+
+/**
+ * Dense grid of map cells<br>
+ * One byte per cell, stored row by row. Cells outside of the grid are empty
+ * (0) on read.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapGrid {
+	private int width;
+	private int height;
+	// row major, index y * width + x
+	private byte[] cells;
+
+	/**
+	 * Creates a new empty MapGrid
+	 *
+	 * @param width
+	 *            Cells per row
+	 * @param height
+	 *            Amount of rows
+	 */
+	public MapGrid(final int width, final int height) {
+		checkSize(width, height);
+		this.width = width;
+		this.height = height;
+		this.cells = new byte[width * height];
+	}
+
+	/**
+	 * Returns the amount of cells per row
+	 *
+	 * @return int width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the amount of rows
+	 *
+	 * @return int height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the value of the cell
+	 *
+	 * @param x
+	 *            Column
+	 * @param y
+	 *            Row
+	 * @return int value, 0 outside of the grid
+	 */
+	public int get(final int x, final int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height)
+			return 0;
+		return cells[y * width + x];
+	}
+
+	/**
+	 * Set the value of the cell<br>
+	 * Grows the grid if the cell is outside of it
+	 *
+	 * @param x
+	 *            Column
+	 * @param y
+	 *            Row
+	 * @param value
+	 *            Cell value, in byte range
+	 */
+	public void set(final int x, final int y, final int value) {
+		checkValue(value);
+		if (x >= width || y >= height)
+			resize(Math.max(width, x + 1), Math.max(height, y + 1));
+		cells[y * width + x] = (byte) value;
+	}
+
+	/**
+	 * Resize the grid, keeping the cells inside of the new bounds
+	 *
+	 * @param newWidth
+	 *            Cells per row
+	 * @param newHeight
+	 *            Amount of rows
+	 */
+	public void resize(final int newWidth, final int newHeight) {
+		if (newWidth == width && newHeight == height)
+			return;
+		checkSize(newWidth, newHeight);
+		byte[] resized = new byte[newWidth * newHeight];
+		int copyWidth = Math.min(width, newWidth);
+		int copyHeight = Math.min(height, newHeight);
+		for (int y = 0; y < copyHeight; y++)
+			System.arraycopy(cells, y * width, resized, y * newWidth, copyWidth);
+		cells = resized;
+		width = newWidth;
+		height = newHeight;
+	}
+
+	/**
+	 * Copy a row into the array
+	 *
+	 * @param y
+	 *            Row
+	 * @param dest
+	 *            Array of at least {@link #getWidth()} elements
+	 */
+	public void getRow(final int y, final int[] dest) {
+		int offset = y * width;
+		for (int x = 0; x < width; x++)
+			dest[x] = cells[offset + x];
+	}
+
+	/**
+	 * Set a row from the array<br>
+	 * Missing values are set to 0
+	 *
+	 * @param y
+	 *            Row
+	 * @param values
+	 *            Values, at most {@link #getWidth()} are used
+	 */
+	public void setRow(final int y, final int[] values) {
+		int offset = y * width;
+		for (int x = 0; x < width; x++) {
+			int v = x < values.length ? values[x] : 0;
+			checkValue(v);
+			cells[offset + x] = (byte) v;
+		}
+	}
+
+	/**
+	 * Copy a column into the array
+	 *
+	 * @param x
+	 *            Column
+	 * @param dest
+	 *            Array of at least {@link #getHeight()} elements
+	 */
+	public void getColumn(final int x, final int[] dest) {
+		for (int y = 0; y < height; y++)
+			dest[y] = cells[y * width + x];
+	}
+
+	/**
+	 * Set all cells of the row
+	 *
+	 * @param y
+	 *            Row
+	 * @param value
+	 *            Cell value
+	 */
+	public void fillRow(final int y, final int value) {
+		checkValue(value);
+		Arrays.fill(cells, y * width, (y + 1) * width, (byte) value);
+	}
+
+	/**
+	 * Set all cells of the column
+	 *
+	 * @param x
+	 *            Column
+	 * @param value
+	 *            Cell value
+	 */
+	public void fillColumn(final int x, final int value) {
+		checkValue(value);
+		for (int y = 0; y < height; y++)
+			cells[y * width + x] = (byte) value;
+	}
+
+	/**
+	 * Set all cells to 0
+	 */
+	public void clear() {
+		Arrays.fill(cells, (byte) 0);
+	}
+
+	/**
+	 * Returns the amount of cells with the specified value
+	 *
+	 * @param value
+	 *            Cell value
+	 * @return int count
+	 */
+	public int count(final int value) {
+		int count = 0;
+		for (byte b : cells) {
+			if (b == value)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Call the visitor for every non empty cell, row by row
+	 *
+	 * @param visitor
+	 *            CellVisitor
+	 */
+	public void forEachBlock(final CellVisitor visitor) {
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				if (cells[offset + x] != 0)
+					visitor.visit(x, y, cells[offset + x]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the backing array, row by row<br>
+	 * Used for bulk reads & writes of map files
+	 *
+	 * @return byte[] cells
+	 */
+	byte[] getCells() {
+		return cells;
+	}
+
+	/**
+	 * Returns a copy of this grid
+	 *
+	 * @return MapGrid
+	 */
+	public MapGrid copy() {
+		MapGrid copy = new MapGrid(width, height);
+		System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+		return copy;
+	}
+
+	/**
+	 * Check the grid size to fit into one array
+	 *
+	 * @param width
+	 * @param height
+	 * @throws IllegalArgumentException
+	 *             for negative or too large sizes
+	 */
+	private static void checkSize(final int width, final int height) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("Negative grid size " + width + "x" + height);
+		if ((long) width * height > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Grid too large " + width + "x" + height);
+	}
+
+	/**
+	 * Check the value to fit into a cell
+	 *
+	 * @param value
+	 * @throws IllegalArgumentException
+	 *             for values outside of the byte range
+	 */
+	private static void checkValue(final int value) {
+		if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("Cell value out of range: " + value);
+	}
+
+	/**
+	 * Visitor of grid cells
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public interface CellVisitor {
+		/**
+		 * Visit a cell
+		 *
+		 * @param x
+		 *            Column
+		 * @param y
+		 *            Row
+		 * @param value
+		 *            Cell value
+		 */
+		public void visit(int x, int y, int value);
+	}
+}
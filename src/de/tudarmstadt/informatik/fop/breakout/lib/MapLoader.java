@@ -1,6 +1,7 @@
 package de.tudarmstadt.informatik.fop.breakout.lib;
 
 import java.util.ArrayList;
+import java.util.Collections;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,8 +22,9 @@ public class MapLoader {
 	private final int width;
 	private final int height;
 	private final AssetManager am;
-	private final int widthStone = 50;
-	private final int heightStone = 30;
+	// size of a block in pixels
+	public static final int STONE_WIDTH = 50;
+	public static final int STONE_HEIGHT = 30;
 
 	/**
 	 * Creates a new MapLoader instance
@@ -45,48 +47,159 @@ public class MapLoader {
 	 * 
 	 * @param map
 	 * @throws SlickException
+	 *             if the map couldn't be loaded
 	 */
 	public LoadData loadMap(Map map) throws SlickException {
-		logger.entry("Loading map {}", map.getAbsolutePath());
-		ArrayList<Block> blockList = new ArrayList<>(25);
-		ArrayList<Block> destroyableBlockList = new ArrayList<>(1);
-		ArrayList<ArrayList<Block>> testMap = new ArrayList<>(5);
-		map.load();
-		int maxRowElements = width / widthStone;
-		if (maxRowElements < map.getMaxRowLength()) {
+		LevelLayout layout = compile(map);
+		if (layout == null)
+			throw new SlickException("Unable to load map " + map.getAbsolutePath());
+		return instantiate(layout);
+	}
+
+	/**
+	 * Load the map and compute the layout of its blocks<br>
+	 * Doesn't require the GL context, can be called from any thread. Starts
+	 * decoding the images of the map theme.
+	 * 
+	 * @param map
+	 *            Map to load
+	 * @return LevelLayout or null if the map couldn't be loaded
+	 */
+	public LevelLayout compile(Map map) {
+		logger.entry("Compiling map {}", map.getAbsolutePath());
+		if (!map.load()) {
+			logger.error("Unable to load map {}", map.getAbsolutePath());
+			logger.exit();
+			return null;
+		}
+		preloadTheme(map);
+		final MapGrid grid = map.getGrid();
+		int maxRowElements = width / STONE_WIDTH;
+		if (maxRowElements < grid.getWidth()) {
 			logger.error("Unable to load Map {}, map too big. Too much elements: {}/{}", map
-					.getAbsolutePath(), maxRowElements, map.getMaxRowLength());
+					.getAbsolutePath(), maxRowElements, grid.getWidth());
 		}
-		int maxRows = height / heightStone;
-		if (maxRows < map.getMap().size()) {
-			logger.error("Unable to load Map {], map too big. Too much Rows: {}/{}", map.getMap().size(), maxRows);
+		int maxRows = height / STONE_HEIGHT;
+		if (maxRows < grid.getHeight()) {
+			logger.info("Map {} has too many rows for the screen: {}/{}, streaming it in chunks", map
+					.getAbsolutePath(), grid.getHeight(), maxRows);
+			logger.exit();
+			return new LevelLayout(map, grid.getWidth(), grid.getHeight(), 0, true);
 		}
 
+		final LevelLayout layout = new LevelLayout(map, grid.getWidth(), grid.getHeight(),
+				grid.getWidth() * grid.getHeight() - grid.count(0), false);
 		// Set X-offset so it's centered + half the width of a stone
-		int startOffsetX = (width - map.getMaxRowLength() * widthStone) / 2 + widthStone / 2;
+		final int startOffsetX = (width - grid.getWidth() * STONE_WIDTH) / 2 + STONE_WIDTH / 2;
 		// Set Y-offset
-		int offsetY = heightStone / 2;
-		for (ArrayList<Integer> row : map.getMap()) {
-			int offsetX = startOffsetX;
-			ArrayList<Block> rowMap = new ArrayList<>(row.size());
-			for (int vStone : row) {
-				Block block = null;
-				if (vStone != 0) {
-					block = new Block(new Vector2f(offsetX, offsetY), widthStone, heightStone, vStone, am,
-							map.getTheme());
-					if(vStone > 0)
-						blockList.add(block);
-					else
-						destroyableBlockList.add(block);
-				}
-				rowMap.add(block);
-				offsetX += widthStone;
+		final int startOffsetY = STONE_HEIGHT / 2;
+		grid.forEachBlock(new MapGrid.CellVisitor() {
+			private int i = 0;
+
+			@Override
+			public void visit(int x, int y, int value) {
+				layout.cellX[i] = x;
+				layout.cellY[i] = y;
+				layout.posX[i] = startOffsetX + x * STONE_WIDTH;
+				layout.posY[i] = startOffsetY + y * STONE_HEIGHT;
+				layout.lives[i] = value;
+				i++;
 			}
-			testMap.add(rowMap);
-			offsetY += heightStone;
-		}
+		});
 		logger.exit();
-		return getLoadData(map.getTheme(), blockList,destroyableBlockList,testMap);
+		return layout;
+	}
+
+	/**
+	 * Start decoding the images of the map theme in parallel, cached ones are
+	 * skipped
+	 * 
+	 * @param map
+	 *            Loaded map
+	 */
+	public void preloadTheme(Map map) {
+		am.preload(ThemeManager.getTheme(map.getTheme()).getPaths());
+	}
+
+	/**
+	 * Create the blocks of the layout & return LoadData with theme
+	 * information<br>
+	 * Has to be called on the render thread
+	 * 
+	 * @param layout
+	 *            LevelLayout from {@link #compile(Map)}
+	 * @return LoadData
+	 * @throws SlickException
+	 */
+	public LoadData instantiate(LevelLayout layout) throws SlickException {
+		final int theme = layout.map.getTheme();
+		ArrayList<Block> blockList = new ArrayList<>(layout.blockCount);
+		ArrayList<Block> destroyableBlockList = new ArrayList<>(1);
+		if (layout.chunked) {
+			LoadData ld = getLoadData(theme, blockList, destroyableBlockList, new ArrayList<ArrayList<Block>>());
+			ld.chunkedLevel = new ChunkedLevel(layout.map, width, STONE_WIDTH, STONE_HEIGHT,
+					height / STONE_HEIGHT / 2, am);
+			return ld;
+		}
+		ArrayList<ArrayList<Block>> testMap = new ArrayList<>(layout.rows);
+		for (int y = 0; y < layout.rows; y++)
+			testMap.add(new ArrayList<Block>(Collections.nCopies(layout.columns, (Block) null)));
+		if (layout.blockHandles == null) // kept for cached layouts
+			layout.blockHandles = ThemeManager.resolveBlockHandles(theme, am);
+		final int[] blockHandles = layout.blockHandles;
+		for (int i = 0; i < layout.blockCount; i++) {
+			int vStone = layout.lives[i];
+			Block block = new Block(new Vector2f(layout.posX[i], layout.posY[i]), STONE_WIDTH, STONE_HEIGHT, vStone,
+					am, blockHandles);
+			if (vStone > 0)
+				blockList.add(block);
+			else
+				destroyableBlockList.add(block);
+			testMap.get(layout.cellY[i]).set(layout.cellX[i], block);
+		}
+		return getLoadData(theme, blockList, destroyableBlockList, testMap);
+	}
+
+	/**
+	 * Release the images referenced by the LoadData<br>
+	 * Blocks already removed from the block lists have to be released by the
+	 * caller. Blocks of a chunked level are released by it only, even if
+	 * added to the block lists. To be called after loading the next map, so
+	 * images shared by both themes stay loaded.
+	 * 
+	 * @param ld
+	 *            LoadData of a previous loadMap call
+	 */
+	public void unloadMap(LoadData ld) {
+		if (ld.chunkedLevel != null) {
+			ld.chunkedLevel.release();
+		} else {
+			for (Block b : ld.destroyableBlockList)
+				b.releaseImage();
+			for (Block b : ld.undestroyableBlockList)
+				b.releaseImage();
+		}
+		am.releaseImg(ld.pBackgroundPath);
+		am.releaseImg(ld.pBallPath);
+		am.releaseImg(ld.pStickPath);
+	}
+
+	/**
+	 * Returns the game display width
+	 * 
+	 * @return int width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the game display height
+	 * 
+	 * @return int height
+	 */
+	public int getHeight() {
+		return height;
 	}
 
 	/**
@@ -100,9 +213,14 @@ public class MapLoader {
 		public Image pBackground;
 		public Image pStick;
 		public Image pBall;
+		public String pBackgroundPath;
+		public String pStickPath;
+		public String pBallPath;
 		public ArrayList<Block> destroyableBlockList;
 		public ArrayList<Block> undestroyableBlockList;
 		public ArrayList<ArrayList<Block>> testBlockMap;
+		// set for levels too big for the screen, streams their blocks
+		public ChunkedLevel chunkedLevel;
 	}
 
 	/**
@@ -121,13 +239,13 @@ public class MapLoader {
 		ld.destroyableBlockList = destroyableBlockList;
 		ld.undestroyableBlockList = undestroyableBlockList;
 		ld.testBlockMap = testData;
-		switch (theme) {
-		case 0:
-		default:
-			ld.pBackground = am.getImg("images/background.png");
-			ld.pBall = am.getImg("images/ball.png");
-			ld.pStick = am.getImg("images/stick.png");
-		}
+		Theme t = ThemeManager.getTheme(theme);
+		ld.pBackgroundPath = t.getPath(Theme.BACKGROUND);
+		ld.pBallPath = t.getPath(Theme.BALL);
+		ld.pStickPath = t.getPath(Theme.STICK);
+		ld.pBackground = am.getImg(ld.pBackgroundPath);
+		ld.pBall = am.getImg(ld.pBallPath);
+		ld.pStick = am.getImg(ld.pStickPath);
 		return ld;
 	}
 }
@@ -0,0 +1,155 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+/**
+ * Structural metrics of a map grid<br>
+ * Blocks are reachable if the ball can get to them from below the grid,
+ * destroying other blocks on its way. Undestroyable blocks (-1) are walls.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapMetrics {
+	private final int cells;
+	private final int blocks;
+	private final int destroyable;
+	private final int undestroyable;
+	private final int reachable;
+
+	private MapMetrics(final int cells, final int blocks, final int destroyable, final int undestroyable,
+			final int reachable) {
+		this.cells = cells;
+		this.blocks = blocks;
+		this.destroyable = destroyable;
+		this.undestroyable = undestroyable;
+		this.reachable = reachable;
+	}
+
+	/**
+	 * Measure the grid
+	 *
+	 * @param grid
+	 *            MapGrid
+	 * @return MapMetrics
+	 */
+	public static MapMetrics measure(final MapGrid grid) {
+		final int width = grid.getWidth();
+		final int height = grid.getHeight();
+		int destroyable = 0;
+		int undestroyable = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int v = grid.get(x, y);
+				if (v > 0)
+					destroyable++;
+				else if (v < 0)
+					undestroyable++;
+			}
+		}
+
+		// flood fill from the bottom row, through empty & destroyable cells
+		boolean[] visited = new boolean[width * height];
+		int[] queue = new int[width * height];
+		int head = 0;
+		int tail = 0;
+		for (int x = 0; height > 0 && x < width; x++) {
+			int cell = (height - 1) * width + x;
+			if (grid.get(x, height - 1) >= 0) {
+				visited[cell] = true;
+				queue[tail++] = cell;
+			}
+		}
+		int reachable = 0;
+		while (head < tail) {
+			int cell = queue[head++];
+			int x = cell % width;
+			int y = cell / width;
+			if (grid.get(x, y) > 0)
+				reachable++;
+			if (x > 0)
+				tail = visit(grid, visited, queue, tail, x - 1, y);
+			if (x < width - 1)
+				tail = visit(grid, visited, queue, tail, x + 1, y);
+			if (y > 0)
+				tail = visit(grid, visited, queue, tail, x, y - 1);
+			if (y < height - 1)
+				tail = visit(grid, visited, queue, tail, x, y + 1);
+		}
+		return new MapMetrics(width * height, destroyable + undestroyable, destroyable, undestroyable, reachable);
+	}
+
+	/**
+	 * Queue the cell if it is passable and not yet visited
+	 *
+	 * @return int new queue tail
+	 */
+	private static int visit(final MapGrid grid, final boolean[] visited, final int[] queue, int tail, final int x,
+			final int y) {
+		int cell = y * grid.getWidth() + x;
+		if (!visited[cell] && grid.get(x, y) >= 0) {
+			visited[cell] = true;
+			queue[tail++] = cell;
+		}
+		return tail;
+	}
+
+	/**
+	 * Returns the amount of blocks, including undestroyable ones
+	 *
+	 * @return int blocks
+	 */
+	public int getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Returns the amount of destroyable blocks
+	 *
+	 * @return int blocks
+	 */
+	public int getDestroyable() {
+		return destroyable;
+	}
+
+	/**
+	 * Returns the amount of undestroyable blocks
+	 *
+	 * @return int blocks
+	 */
+	public int getUndestroyable() {
+		return undestroyable;
+	}
+
+	/**
+	 * Returns the amount of destroyable blocks the ball can reach
+	 *
+	 * @return int blocks
+	 */
+	public int getReachable() {
+		return reachable;
+	}
+
+	/**
+	 * Returns whether all destroyable blocks can be reached, so the level can
+	 * be finished
+	 *
+	 * @return true if finishable
+	 */
+	public boolean isFinishable() {
+		return destroyable > 0 && reachable == destroyable;
+	}
+
+	/**
+	 * Returns the share of cells occupied by blocks
+	 *
+	 * @return float density between 0 and 1
+	 */
+	public float getDensity() {
+		return cells == 0 ? 0 : blocks / (float) cells;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("blocks=%d destroyable=%d undestroyable=%d reachable=%d density=%.2f", blocks,
+				destroyable, undestroyable, reachable, getDensity());
+	}
+}
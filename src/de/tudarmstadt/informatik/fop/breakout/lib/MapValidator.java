@@ -0,0 +1,335 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import de.tudarmstadt.informatik.fop.breakout.constants.GameParameters;
+
+/**
+ * Validator & linter for map files<br>
+ * Checks a directory of maps in parallel and writes a tab separated report
+ * with one line per finding: <code>map severity code detail</code>, UTF-8
+ * encoded. Maps without findings get one OK line with their metrics.<br>
+ * Usage as tool: <code>MapValidator map_dir report_file</code>, exits with 1
+ * if any map has errors.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapValidator {
+	private final static Logger logger = LogManager.getLogger();
+
+	private static final String SEPARATOR = "\t";
+	// ball velocity & gravity outside of these bounds are suspicious
+	private static final float MAX_VELOCITY = 20;
+	private static final float MAX_GRAVITY = 10;
+
+	/**
+	 * Severity of a finding
+	 */
+	public enum Severity {
+		OK, WARNING, ERROR
+	}
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * Creates a new MapValidator
+	 *
+	 * @param width
+	 *            Game display width
+	 * @param height
+	 *            Game display height
+	 */
+	public MapValidator(final int width, final int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Validate the map
+	 *
+	 * @param file
+	 *            Map file
+	 * @return Result
+	 */
+	public Result validate(final File file) {
+		Result result = new Result(file.getName());
+		Map map = new Map(file, true);
+		if (!map.load()) {
+			result.add(Severity.ERROR, "PARSE", "unable to load the map");
+			return result;
+		}
+		MapGrid grid = map.getGrid();
+		if (grid.getWidth() == 0 || grid.getHeight() == 0) {
+			result.add(Severity.ERROR, "EMPTY", "map has no cells");
+			return result;
+		}
+		int maxColumns = width / MapLoader.STONE_WIDTH;
+		if (grid.getWidth() > maxColumns)
+			result.add(Severity.ERROR, "WIDTH", grid.getWidth() + " columns, at most " + maxColumns + " fit");
+		int maxRows = height / MapLoader.STONE_HEIGHT;
+		if (grid.getHeight() > maxRows)
+			result.add(Severity.WARNING, "HEIGHT", grid.getHeight() + " rows, more than " + maxRows
+					+ " are streamed in chunks");
+
+		int invalid = 0;
+		int clamped = 0;
+		for (int y = 0; y < grid.getHeight(); y++) {
+			for (int x = 0; x < grid.getWidth(); x++) {
+				int v = grid.get(x, y);
+				if (v < -1)
+					invalid++;
+				else if (v > ThemeManager.MAX_BLOCK_LIFE)
+					clamped++;
+			}
+		}
+		if (invalid > 0)
+			result.add(Severity.ERROR, "VALUE", invalid + " cells below -1");
+		if (clamped > 0)
+			result.add(Severity.WARNING, "LIFE", clamped + " blocks above life " + ThemeManager.MAX_BLOCK_LIFE
+					+ " share its image");
+
+		MapMetrics metrics = MapMetrics.measure(grid);
+		result.metrics = metrics;
+		if (metrics.getDestroyable() == 0)
+			result.add(Severity.ERROR, "NO_BLOCKS", metrics.getUndestroyable() == 0 ? "map is empty"
+					: "only undestroyable blocks");
+		else if (!metrics.isFinishable())
+			result.add(Severity.ERROR, "UNREACHABLE", (metrics.getDestroyable() - metrics.getReachable())
+					+ " blocks are boxed in by undestroyable blocks");
+
+		float velocity = map.getBallVelocity();
+		if (Float.isNaN(velocity) || velocity <= 0)
+			result.add(Severity.ERROR, "VELOCITY", "ball velocity " + velocity);
+		else if (velocity > MAX_VELOCITY)
+			result.add(Severity.WARNING, "VELOCITY", "ball velocity " + velocity + " above " + MAX_VELOCITY);
+		float gravity = map.getGravity();
+		if (Float.isNaN(gravity) || Float.isInfinite(gravity))
+			result.add(Severity.ERROR, "GRAVITY", "gravity " + gravity);
+		else if (Math.abs(gravity) > MAX_GRAVITY)
+			result.add(Severity.WARNING, "GRAVITY", "gravity " + gravity + " above " + MAX_GRAVITY);
+		if (!ThemeManager.hasTheme(map.getTheme()))
+			result.add(Severity.WARNING, "THEME", "unknown theme " + map.getTheme() + ", base theme is used");
+		return result;
+	}
+
+	/**
+	 * Validate all maps of the directory in parallel
+	 *
+	 * @param dir
+	 *            Map directory
+	 * @param threads
+	 *            Amount of threads to use
+	 * @return ArrayList<Result> results sorted by map name
+	 * @throws IOException
+	 *             if the directory can't be listed
+	 */
+	public ArrayList<Result> validateAll(final File dir, final int threads) throws IOException {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(MapCatalog.MAP_SUFFIX));
+		if (files == null)
+			throw new IOException("Not a directory: " + dir);
+		Arrays.sort(files);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures = new ArrayList<>(files.length);
+			for (File f : files)
+				futures.add(executor.submit(() -> validate(f)));
+			ArrayList<Result> results = new ArrayList<>(files.length);
+			for (Future<Result> f : futures)
+				results.add(f.get());
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Validation failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Write the report of the results
+	 *
+	 * @param report
+	 *            Report file
+	 * @param results
+	 *            Results of {@link #validateAll(File, int)}
+	 * @throws IOException
+	 */
+	public static void writeReport(final File report, final List<Result> results) throws IOException {
+		try (AtomicFileWriter writer = new AtomicFileWriter(report)) {
+			writeLine(writer, "# map\tseverity\tcode\tdetail");
+			for (Result r : results) {
+				if (r.issues.isEmpty())
+					writeLine(writer, r.name + SEPARATOR + Severity.OK + SEPARATOR + "-" + SEPARATOR + r.metrics);
+				for (Issue i : r.issues)
+					writeLine(writer, r.name + SEPARATOR + i.severity + SEPARATOR + i.code + SEPARATOR + i.detail);
+			}
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Write the line UTF-8 encoded, map names are not limited to ASCII
+	 *
+	 * @param writer
+	 * @param line
+	 * @throws IOException
+	 */
+	private static void writeLine(final AtomicFileWriter writer, final String line) throws IOException {
+		writer.write(line.getBytes(StandardCharsets.UTF_8));
+		writer.newLine();
+	}
+
+	/**
+	 * Validation result of one map
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public static class Result {
+		private final String name;
+		private final ArrayList<Issue> issues = new ArrayList<>(1);
+		private MapMetrics metrics = null;
+
+		private Result(final String name) {
+			this.name = name;
+		}
+
+		private void add(final Severity severity, final String code, final String detail) {
+			issues.add(new Issue(severity, code, detail));
+		}
+
+		/**
+		 * Returns the file name of the map
+		 *
+		 * @return String name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the findings
+		 *
+		 * @return ArrayList<Issue> issues
+		 */
+		public ArrayList<Issue> getIssues() {
+			return new ArrayList<>(issues);
+		}
+
+		/**
+		 * Returns the metrics of the map
+		 *
+		 * @return MapMetrics or null if the map couldn't be loaded
+		 */
+		public MapMetrics getMetrics() {
+			return metrics;
+		}
+
+		/**
+		 * Returns the highest severity of the findings
+		 *
+		 * @return Severity
+		 */
+		public Severity getSeverity() {
+			Severity max = Severity.OK;
+			for (Issue i : issues) {
+				if (i.severity.compareTo(max) > 0)
+					max = i.severity;
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * Finding of the validation
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public static class Issue {
+		private final Severity severity;
+		private final String code;
+		private final String detail;
+
+		private Issue(final Severity severity, final String code, final String detail) {
+			this.severity = severity;
+			this.code = code;
+			this.detail = detail;
+		}
+
+		/**
+		 * Returns the severity
+		 *
+		 * @return Severity
+		 */
+		public Severity getSeverity() {
+			return severity;
+		}
+
+		/**
+		 * Returns the machine readable code
+		 *
+		 * @return String code
+		 */
+		public String getCode() {
+			return code;
+		}
+
+		/**
+		 * Returns the human readable detail
+		 *
+		 * @return String detail
+		 */
+		public String getDetail() {
+			return detail;
+		}
+	}
+
+	/**
+	 * Command line entry point
+	 *
+	 * @param args
+	 *            map_dir report_file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: MapValidator map_dir report_file");
+			System.exit(1);
+		}
+		MapValidator validator = new MapValidator(GameParameters.WINDOW_WIDTH, GameParameters.WINDOW_HEIGHT);
+		try {
+			long start = System.nanoTime();
+			ArrayList<Result> results = validator.validateAll(new File(args[0]), Runtime.getRuntime()
+					.availableProcessors());
+			writeReport(new File(args[1]), results);
+			int errors = 0;
+			for (Result r : results) {
+				if (r.getSeverity() == Severity.ERROR)
+					errors++;
+			}
+			logger.info("Validated {} maps in {} ms, {} with errors", results.size(), (System.nanoTime() - start)
+					/ 1000000, errors);
+			System.exit(errors == 0 ? 0 : 1);
+		} catch (IOException e) {
+			logger.error("Validation failed: ", e);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+
+/**
+ * Index of the highscore entries by player<br>
+ * Keeps the best games of every player by normalized name. The best entry of
+ * each player is counted in a {@link FenwickTree} over the destroyed blocks,
+ * so the global rank of a player is found in O(log n). Players with the same
+ * amount of blocks share a rank, as do all players above
+ * {@value #MAX_BUCKET} blocks.<br>
+ * Players are never evicted, as every one counts for the ranks. Histories are
+ * bounded, so memory grows by at most {@value #HISTORY_SIZE} entries per
+ * player.<br>
+ * Not thread safe, guarded by the {@link HighscoreLib}.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class PlayerIndex {
+	// best games kept per player
+	public static final int HISTORY_SIZE = 10;
+	// highest rank bucket, bounds the size of the rank tree
+	public static final int MAX_BUCKET = 1 << 20;
+	private static final int INITIAL_BUCKETS = 1024;
+
+	private final HashMap<String, Player> players = new HashMap<>();
+	private FenwickTree ranks = new FenwickTree(INITIAL_BUCKETS);
+
+	/**
+	 * Add the entry to its player
+	 *
+	 * @param e
+	 *            Entry
+	 * @return true if the entry is kept in the history of the player
+	 */
+	public boolean add(final HighscoreEntry e) {
+		String key = normalize(e.getPlayerName());
+		Player player = players.get(key);
+		if (player == null) {
+			player = new Player();
+			players.put(key, player);
+		}
+		HighscoreEntry oldBest = player.getBest();
+		if (!player.history.offer(e))
+			return false;
+		player.name = e.getPlayerName();
+		HighscoreEntry best = player.getBest();
+		if (best != oldBest) {
+			if (oldBest != null)
+				ranks.add(getBucket(oldBest), -1);
+			ranks.add(getBucket(best), 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the player of the name
+	 *
+	 * @param name
+	 *            Player name, not normalized
+	 * @return Player or null if unknown
+	 */
+	public Player getPlayer(final String name) {
+		return players.get(normalize(name));
+	}
+
+	/**
+	 * Returns the global rank of the player by the best entry
+	 *
+	 * @param name
+	 *            Player name, not normalized
+	 * @return int rank starting at 1, 0 if the player is unknown
+	 */
+	public int getRank(final String name) {
+		Player player = getPlayer(name);
+		if (player == null)
+			return 0;
+		return getRank(player.getBest().getNumberOfDestroyedBlocks());
+	}
+
+	/**
+	 * Returns the global rank a player with this amount of blocks would have
+	 *
+	 * @param blocks
+	 *            Destroyed blocks
+	 * @return int rank starting at 1
+	 */
+	public int getRank(final int blocks) {
+		return (int) ranks.sumAbove(getBucket(blocks)) + 1;
+	}
+
+	/**
+	 * Returns the amount of players
+	 *
+	 * @return int players
+	 */
+	public int getPlayerCount() {
+		return players.size();
+	}
+
+	/**
+	 * Returns the history entries of all players
+	 *
+	 * @return ArrayList<HighscoreEntry> entries
+	 */
+	public ArrayList<HighscoreEntry> getEntries() {
+		ArrayList<HighscoreEntry> entries = new ArrayList<>();
+		for (Player p : players.values()) {
+			for (int i = 0; i < p.history.size(); i++)
+				entries.add(p.history.get(i));
+		}
+		return entries;
+	}
+
+	/**
+	 * Remove all players
+	 */
+	public void clear() {
+		players.clear();
+		ranks = new FenwickTree(INITIAL_BUCKETS);
+	}
+
+	/**
+	 * Returns the rank bucket of the entry
+	 *
+	 * @param e
+	 *            Entry
+	 * @return int bucket
+	 */
+	private static int getBucket(final HighscoreEntry e) {
+		return getBucket(e.getNumberOfDestroyedBlocks());
+	}
+
+	/**
+	 * Returns the rank bucket of the amount of blocks
+	 *
+	 * @param blocks
+	 *            Destroyed blocks
+	 * @return int bucket between 0 and {@value #MAX_BUCKET}
+	 */
+	private static int getBucket(final int blocks) {
+		return Math.min(Math.max(blocks, 0), MAX_BUCKET);
+	}
+
+	/**
+	 * Returns the normalized player name<br>
+	 * Case and surrounding whitespace are ignored
+	 *
+	 * @param name
+	 *            Player name
+	 * @return String key
+	 */
+	public static String normalize(final String name) {
+		return name.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Player of the index
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	public static class Player {
+		private String name;
+		private final TopList<HighscoreEntry> history = new TopList<>(HISTORY_SIZE);
+
+		private Player() {
+		}
+
+		/**
+		 * Returns the name of the last entry kept in the history
+		 *
+		 * @return String name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the best entry
+		 *
+		 * @return HighscoreEntry
+		 */
+		public HighscoreEntry getBest() {
+			return history.size() == 0 ? null : history.get(0);
+		}
+
+		/**
+		 * Returns the best entries, best first
+		 *
+		 * @return ArrayList<HighscoreEntry> history
+		 */
+		public ArrayList<HighscoreEntry> getHistory() {
+			return history.toList();
+		}
+	}
+}
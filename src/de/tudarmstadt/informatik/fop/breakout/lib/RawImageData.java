@@ -0,0 +1,93 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.nio.ByteBuffer;
+
+import org.newdawn.slick.opengl.ImageData;
+
+/**
+ * Already decoded image data, ready for the texture upload<br>
+ * The pixel buffer is the same layout the Slick decoders produce, including
+ * the padding to the texture size.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class RawImageData implements ImageData {
+	private final Format format;
+	private final int width;
+	private final int height;
+	private final int texWidth;
+	private final int texHeight;
+	private final ByteBuffer data;
+
+	/**
+	 * Creates a new RawImageData
+	 *
+	 * @param format
+	 *            Pixel format
+	 * @param width
+	 *            Image width
+	 * @param height
+	 *            Image height
+	 * @param texWidth
+	 *            Texture width, at least the image width
+	 * @param texHeight
+	 *            Texture height, at least the image height
+	 * @param data
+	 *            Pixel data, has to be a direct buffer for the upload
+	 */
+	public RawImageData(final Format format, final int width, final int height, final int texWidth,
+			final int texHeight, final ByteBuffer data) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.texWidth = texWidth;
+		this.texHeight = texHeight;
+		this.data = data;
+	}
+
+	/**
+	 * Returns the expected size of the pixel data in bytes
+	 *
+	 * @param format
+	 *            Pixel format
+	 * @param texWidth
+	 *            Texture width
+	 * @param texHeight
+	 *            Texture height
+	 * @return int size in bytes
+	 */
+	public static int getDataSize(final Format format, final int texWidth, final int texHeight) {
+		return format.getColorComponents() * texWidth * texHeight;
+	}
+
+	@Override
+	public Format getFormat() {
+		return format;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getTexWidth() {
+		return texWidth;
+	}
+
+	@Override
+	public int getTexHeight() {
+		return texHeight;
+	}
+
+	@Override
+	public ByteBuffer getImageBufferData() {
+		return data;
+	}
+}
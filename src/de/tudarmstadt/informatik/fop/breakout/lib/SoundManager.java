@@ -0,0 +1,397 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.openal.AL10;
+import org.newdawn.slick.openal.Audio;
+import org.newdawn.slick.openal.SoundStore;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Sound manager with a fixed pool of voices<br>
+ * Every sound buffer is decoded only once. Each sound has a limit of voices
+ * playing it at the same time, if the limit or the pool is exhausted the
+ * oldest voice is stolen.<br>
+ * Buffers are kept in a memory budgeted cache, playing voices hold a
+ * reference on their buffer.<br>
+ * Sounds are addressed by integer ids, see {@link #getSoundId(String)}.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class SoundManager {
+	private final Logger logger = LogManager.getLogger(this);
+
+	public static final int DEFAULT_VOICES = 16;
+	public static final int DEFAULT_VOICES_PER_SOUND = 3;
+	public static final long DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+	private final AssetCache<Audio> buffers = new AssetCache<>(DEFAULT_BUDGET, new AssetCache.Releaser<Audio>() {
+		@Override
+		public void release(Audio asset) {
+			asset.release();
+		}
+	});
+	// ids of sounds which failed to load, not retried
+	private final BitSet failed = new BitSet();
+	// per sound id, 0 for the default limit
+	private int[] voiceLimits = new int[16];
+	private final Voice[] voices;
+	private int defaultVoiceLimit = DEFAULT_VOICES_PER_SOUND;
+	private long voiceCounter = 0;
+	private long stolenVoices = 0;
+
+	/**
+	 * Creates a new SoundManager with the default amount of voices
+	 */
+	public SoundManager() {
+		this(DEFAULT_VOICES);
+	}
+
+	/**
+	 * Creates a new SoundManager
+	 *
+	 * @param voiceCount
+	 *            Size of the voice pool, should not exceed the OpenAL sources
+	 *            of the SoundStore
+	 */
+	public SoundManager(final int voiceCount) {
+		voices = new Voice[voiceCount];
+		for (int i = 0; i < voiceCount; i++)
+			voices[i] = new Voice();
+	}
+
+	/**
+	 * Returns the id of the sound, stable for the lifetime of this manager
+	 *
+	 * @param path
+	 *            path of the sound
+	 * @return int sound id
+	 */
+	public int getSoundId(final String path) {
+		return buffers.handle(path);
+	}
+
+	/**
+	 * Play a sound once
+	 *
+	 * @param id
+	 *            id of the sound
+	 */
+	public synchronized void play(final int id) {
+		play(id, false);
+	}
+
+	/**
+	 * Play a sound in an endless loop<br>
+	 * Looping voices are never stolen
+	 *
+	 * @param id
+	 *            id of the sound
+	 */
+	public synchronized void loop(final int id) {
+		play(id, true);
+	}
+
+	/**
+	 * Play the specified sound on a free or stolen voice
+	 *
+	 * @param id
+	 *            id of the sound
+	 * @param loop
+	 *            true to loop the sound
+	 */
+	private void play(final int id, final boolean loop) {
+		if (!initSound())
+			return;
+		Audio audio = acquireBuffer(id);
+		if (audio == null)
+			return;
+
+		Voice voice = acquireVoice(id);
+		if (voice == null) {
+			logger.debug("No voice available for {}", buffers.getKey(id));
+			buffers.release(id);
+			return;
+		}
+		int source = audio.playAsSoundEffect(1.0f, 1.0f, loop);
+		if (source < 0) {
+			buffers.release(id);
+			return;
+		}
+		voice.sound = id;
+		voice.source = source;
+		voice.looping = loop;
+		voice.started = voiceCounter++;
+	}
+
+	/**
+	 * Returns a voice to play the specified sound on<br>
+	 * Steals the oldest voice of this sound if its limit is reached, or the
+	 * oldest voice overall if the pool is exhausted
+	 *
+	 * @param id
+	 *            id of the sound
+	 * @return Voice or null if every voice is looping
+	 */
+	private Voice acquireVoice(final int id) {
+		Voice free = null;
+		Voice oldestSame = null;
+		Voice oldest = null;
+		int playing = 0;
+		for (Voice v : voices) {
+			if (v.sound >= 0 && !v.isPlaying())
+				free(v);
+			if (v.sound < 0) {
+				if (free == null)
+					free = v;
+				continue;
+			}
+			if (v.looping)
+				continue;
+			if (v.sound == id) {
+				playing++;
+				if (oldestSame == null || v.started < oldestSame.started)
+					oldestSame = v;
+			}
+			if (oldest == null || v.started < oldest.started)
+				oldest = v;
+		}
+		Voice victim = null;
+		if (playing >= getVoiceLimit(id))
+			victim = oldestSame;
+		else if (free == null)
+			victim = oldest;
+		if (victim != null) {
+			victim.stop();
+			free(victim);
+			stolenVoices++;
+			return victim;
+		}
+		return free;
+	}
+
+	/**
+	 * Free the voice and release its buffer reference
+	 *
+	 * @param voice
+	 *            Voice to free
+	 */
+	private void free(final Voice voice) {
+		buffers.release(voice.sound);
+		voice.clear();
+	}
+
+	/**
+	 * Returns the decoded buffer of the sound and increments its reference
+	 * count, decoding it if it's not cached<br>
+	 * Failed loads are remembered and not retried
+	 *
+	 * @param id
+	 *            id of the sound
+	 * @return Audio or null if the sound couldn't be loaded
+	 */
+	private Audio acquireBuffer(final int id) {
+		Audio audio = buffers.acquire(id);
+		if (audio != null || failed.get(id))
+			return audio;
+		final String path = buffers.getKey(id);
+		try {
+			audio = decode(path, ResourceLoader.getResourceAsStream(path));
+			buffers.put(id, audio, getSize(audio), 1);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Unable to load Sound {}", path, e);
+			failed.set(id);
+		}
+		return audio;
+	}
+
+	/**
+	 * Returns the size of the OpenAL buffer of the audio
+	 *
+	 * @param audio
+	 * @return long size in bytes
+	 */
+	private long getSize(final Audio audio) {
+		return AL10.alGetBufferi(audio.getBufferID(), AL10.AL_SIZE);
+	}
+
+	/**
+	 * Add an already read sound file, decoding it if not yet loaded<br>
+	 * Used to upload sounds read by the AssetLoader
+	 *
+	 * @param path
+	 *            path of the sound
+	 * @param data
+	 *            stream of the sound file content
+	 */
+	public synchronized void addBuffer(final String path, final InputStream data) {
+		final int id = buffers.handle(path);
+		if (buffers.contains(id) || failed.get(id) || !initSound())
+			return;
+		try {
+			Audio audio = decode(path, data);
+			buffers.put(id, audio, getSize(audio), 0);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Unable to load Sound {}", path, e);
+			failed.set(id);
+		}
+	}
+
+	/**
+	 * Decode the sound from the stream
+	 *
+	 * @param path
+	 *            path of the sound, used for the format and as reference
+	 * @param in
+	 *            stream with the sound file content
+	 * @return Audio
+	 * @throws IOException
+	 */
+	private Audio decode(final String path, final InputStream in) throws IOException {
+		String lower = path.toLowerCase();
+		if (lower.endsWith(".ogg"))
+			return SoundStore.get().getOgg(path, in);
+		else if (lower.endsWith(".aif"))
+			return SoundStore.get().getAIF(path, in);
+		else
+			return SoundStore.get().getWAV(path, in);
+	}
+
+	/**
+	 * Initialize the sound system if required
+	 *
+	 * @return true if sound is available
+	 */
+	private boolean initSound() {
+		SoundStore store = SoundStore.get();
+		store.init(); // no-op if already initialized
+		return store.soundWorks();
+	}
+
+	/**
+	 * Stop all voices
+	 */
+	public synchronized void stopAll() {
+		for (Voice v : voices) {
+			if (v.sound >= 0) {
+				v.stop();
+				free(v);
+			}
+		}
+	}
+
+	/**
+	 * Set the maximum amount of voices playing the specified sound at the same
+	 * time
+	 *
+	 * @param path
+	 *            path of the sound
+	 * @param limit
+	 *            maximum simultaneous voices
+	 */
+	public synchronized void setVoiceLimit(final String path, final int limit) {
+		final int id = getSoundId(path);
+		if (id >= voiceLimits.length)
+			voiceLimits = Arrays.copyOf(voiceLimits, Math.max(id + 1, voiceLimits.length * 2));
+		voiceLimits[id] = limit;
+	}
+
+	/**
+	 * Set the voice limit used for sounds without their own limit
+	 *
+	 * @param limit
+	 *            maximum simultaneous voices
+	 */
+	public synchronized void setDefaultVoiceLimit(final int limit) {
+		defaultVoiceLimit = limit;
+	}
+
+	/**
+	 * Returns the voice limit of the specified sound
+	 *
+	 * @param path
+	 *            path of the sound
+	 * @return maximum simultaneous voices
+	 */
+	public synchronized int getVoiceLimit(final String path) {
+		return getVoiceLimit(getSoundId(path));
+	}
+
+	/**
+	 * Returns the voice limit of the specified sound
+	 *
+	 * @param id
+	 *            id of the sound
+	 * @return maximum simultaneous voices
+	 */
+	private int getVoiceLimit(final int id) {
+		if (id >= voiceLimits.length || voiceLimits[id] == 0)
+			return defaultVoiceLimit;
+		return voiceLimits[id];
+	}
+
+	/**
+	 * Returns the cache of the sound buffers
+	 *
+	 * @return AssetCache<Audio>
+	 */
+	public AssetCache<Audio> getCache() {
+		return buffers;
+	}
+
+	/**
+	 * Returns the amount of voices stolen so far
+	 *
+	 * @return long stolen voices
+	 */
+	public synchronized long getStolenVoices() {
+		return stolenVoices;
+	}
+
+	/**
+	 * Voice of the pool, bound to an OpenAL source while playing
+	 *
+	 * @author Aron Heinecke
+	 *
+	 */
+	private static class Voice {
+		// sound id, -1 if free
+		private int sound = -1;
+		private int source = -1;
+		private boolean looping = false;
+		private long started = 0;
+
+		/**
+		 * Returns whether the source of this voice is still playing
+		 *
+		 * @return true if playing
+		 */
+		private boolean isPlaying() {
+			return source >= 0 && AL10.alGetSourcei(source, AL10.AL_SOURCE_STATE) == AL10.AL_PLAYING;
+		}
+
+		/**
+		 * Stop the source of this voice
+		 */
+		private void stop() {
+			if (source >= 0)
+				SoundStore.get().stopSoundEffect(source);
+		}
+
+		/**
+		 * Reset this voice to be free
+		 */
+		private void clear() {
+			sound = -1;
+			source = -1;
+			looping = false;
+		}
+	}
+}
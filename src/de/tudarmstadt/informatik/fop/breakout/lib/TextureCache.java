@@ -0,0 +1,155 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.newdawn.slick.opengl.ImageData;
+import org.newdawn.slick.opengl.ImageData.Format;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * Disk cache of decoded textures<br>
+ * Entries are keyed by the content hash of the source image, so a changed
+ * source never hits an outdated entry. Cached entries are memory mapped and
+ * uploaded without decoding.<br>
+ * Thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class TextureCache {
+	private final Logger logger = LogManager.getLogger(this);
+
+	private static final int MAGIC = 0x42544331; // "BTC1"
+	// header size, keeps the pixel data aligned
+	private static final int HEADER_SIZE = 32;
+	private static final String SUFFIX = ".tex";
+
+	private final File dir;
+
+	/**
+	 * Creates a new TextureCache
+	 *
+	 * @param dir
+	 *            Cache directory, created if missing
+	 */
+	public TextureCache(final File dir) {
+		this.dir = dir;
+		if (!dir.exists() && !dir.mkdirs())
+			logger.warn("Unable to create texture cache dir {}", dir.getAbsolutePath());
+	}
+
+	/**
+	 * Load the decoded image, from cache if possible<br>
+	 * Decodes and stores the image on a cache miss
+	 *
+	 * @param path
+	 *            Image path
+	 * @return ImageData ready for upload
+	 * @throws IOException
+	 */
+	public ImageData load(final String path) throws IOException {
+		byte[] source;
+		try (InputStream in = ResourceLoader.getResourceAsStream(path)) {
+			source = AssetLoader.readFully(in);
+		} catch (RuntimeException e) {
+			throw new IOException("Image not found: " + path, e);
+		}
+		File entry = new File(dir, ContentHash.of(source) + SUFFIX);
+		if (entry.exists()) {
+			try {
+				return read(entry);
+			} catch (IOException e) {
+				logger.warn("Invalid texture cache entry {}, recreating", entry, e);
+			}
+		}
+		LoadableImageData image = ImageDataFactory.getImageDataFor(path);
+		image.loadImage(new ByteArrayInputStream(source));
+		try {
+			write(entry, image);
+		} catch (IOException e) {
+			logger.warn("Unable to write texture cache entry for {}", path, e);
+		}
+		return image;
+	}
+
+	/**
+	 * Read a cache entry through a memory mapping
+	 *
+	 * @param entry
+	 *            Cache file
+	 * @return RawImageData backed by the mapping
+	 * @throws IOException
+	 */
+	private ImageData read(final File entry) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(entry.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Bad header");
+		int formatId = buffer.get(4);
+		if (formatId < 0 || formatId >= Format.values().length)
+			throw new IOException("Bad format");
+		Format format = Format.values()[formatId];
+		int width = buffer.getInt(8);
+		int height = buffer.getInt(12);
+		int texWidth = buffer.getInt(16);
+		int texHeight = buffer.getInt(20);
+		int size = RawImageData.getDataSize(format, texWidth, texHeight);
+		if (buffer.capacity() != HEADER_SIZE + size)
+			throw new IOException("Truncated entry");
+		buffer.position(HEADER_SIZE);
+		return new RawImageData(format, width, height, texWidth, texHeight, buffer.slice());
+	}
+
+	/**
+	 * Write a cache entry<br>
+	 * Written to a temporary file first, so readers never see partial entries
+	 *
+	 * @param entry
+	 *            Cache file
+	 * @param image
+	 *            Decoded image
+	 * @throws IOException
+	 */
+	private void write(final File entry, final ImageData image) throws IOException {
+		int size = RawImageData.getDataSize(image.getFormat(), image.getTexWidth(), image.getTexHeight());
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.put((byte) image.getFormat().ordinal());
+		header.position(8);
+		header.putInt(image.getWidth());
+		header.putInt(image.getHeight());
+		header.putInt(image.getTexWidth());
+		header.putInt(image.getTexHeight());
+		header.rewind();
+		ByteBuffer data = image.getImageBufferData().duplicate();
+		data.rewind();
+		data.limit(size);
+
+		File tmp = File.createTempFile("tex", ".tmp", dir);
+		try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+			while (header.hasRemaining())
+				channel.write(header);
+			while (data.hasRemaining())
+				channel.write(data);
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		}
+		Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,148 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Theme bundle<br>
+ * Maps asset names to image paths. A bundle file contains one
+ * <code>name=path</code> per line and overrides the assets of its base theme,
+ * lines starting with # are ignored.
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class Theme {
+	private final static Logger logger = LogManager.getLogger();
+
+	public static final String BACKGROUND = "background";
+	public static final String BALL = "ball";
+	public static final String STICK = "stick";
+
+	private final int id;
+	private final LinkedHashMap<String, String> assets = new LinkedHashMap<>();
+
+	/**
+	 * Creates a new Theme
+	 *
+	 * @param id
+	 *            Theme id
+	 * @param base
+	 *            Theme to inherit all assets from, can be null
+	 */
+	public Theme(final int id, final Theme base) {
+		this.id = id;
+		if (base != null)
+			assets.putAll(base.assets);
+	}
+
+	/**
+	 * Returns the built in theme<br>
+	 * Contains every asset the game requires, so a missing or incomplete base
+	 * theme bundle still resolves all images
+	 *
+	 * @return Theme with id 0
+	 */
+	public static Theme getBuiltin() {
+		Theme theme = new Theme(0, null);
+		theme.set(BACKGROUND, "images/background.png");
+		theme.set(BALL, "images/ball.png");
+		theme.set(STICK, "images/stick.png");
+		theme.set(getBlockName(-1), "images/block_m1.png");
+		for (int life = 1; life <= ThemeManager.MAX_BLOCK_LIFE; life++)
+			theme.set(getBlockName(life), "images/block_" + life + ".png");
+		return theme;
+	}
+
+	/**
+	 * Load a theme bundle from file<br>
+	 * Returns the base assets only if the file couldn't be read
+	 *
+	 * @param id
+	 *            Theme id
+	 * @param base
+	 *            Theme to override, can be null
+	 * @param file
+	 *            bundle file
+	 * @return Theme
+	 */
+	public static Theme load(final int id, final Theme base, final File file) {
+		Theme theme = new Theme(id, base);
+		String line;
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				int split = line.indexOf('=');
+				if (split <= 0) {
+					logger.warn("Invalid theme line in {}: {}", file, line);
+					continue;
+				}
+				theme.set(line.substring(0, split).trim(), line.substring(split + 1).trim());
+			}
+		} catch (IOException e) {
+			logger.error("Unable to read theme {}: ", file, e);
+		}
+		return theme;
+	}
+
+	/**
+	 * Returns the asset name of the block image for the specified life
+	 *
+	 * @param life
+	 *            Block life
+	 * @return String asset name
+	 */
+	public static String getBlockName(final int life) {
+		return "block" + life;
+	}
+
+	/**
+	 * Set the path of an asset
+	 *
+	 * @param name
+	 *            Asset name
+	 * @param path
+	 *            Image path
+	 */
+	public void set(final String name, final String path) {
+		assets.put(name, path);
+	}
+
+	/**
+	 * Returns the path of the asset
+	 *
+	 * @param name
+	 *            Asset name
+	 * @return String path or null if not part of the theme
+	 */
+	public String getPath(final String name) {
+		return assets.get(name);
+	}
+
+	/**
+	 * Returns the paths of all assets of this theme
+	 *
+	 * @return Collection<String> image paths
+	 */
+	public Collection<String> getPaths() {
+		return assets.values();
+	}
+
+	/**
+	 * Returns the id of this theme
+	 *
+	 * @return int id
+	 */
+	public int getId() {
+		return id;
+	}
+}
@@ -1,10 +1,15 @@
 package de.tudarmstadt.informatik.fop.breakout.lib;
 
+import java.io.File;
+import java.util.HashMap;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * Theme manager
+ * Theme manager<br>
+ * Themes are data driven bundles in {@value #THEME_DIR}, overriding the
+ * assets of the base theme, which itself overrides the built in images
  * 
  * @author Aron Heinecke
  *
@@ -12,6 +17,99 @@ import org.apache.logging.log4j.Logger;
 public class ThemeManager {
 	private final static Logger logger = LogManager.getLogger();
 
+	// highest life with its own block image
+	public static final int MAX_BLOCK_LIFE = 4;
+	public static final String THEME_DIR = "themes";
+
+	private static final HashMap<Integer, Theme> themes = new HashMap<>();
+	private static Theme base = null;
+
+	/**
+	 * Returns the image handles of all block lives of the theme<br>
+	 * To be resolved once per map, use {@link #getBlockHandle(int[], int)} for
+	 * lookups
+	 * 
+	 * @param theme
+	 *            current theme
+	 * @param am
+	 *            AssetManager to resolve the handles
+	 * @return int[] handle table
+	 */
+	public static int[] resolveBlockHandles(final int theme, final AssetManager am) {
+		int[] table = new int[MAX_BLOCK_LIFE + 2];
+		table[0] = am.getImageHandle(getBlockPicturePath(-1, theme));
+		for (int life = 1; life <= MAX_BLOCK_LIFE; life++)
+			table[life + 1] = am.getImageHandle(getBlockPicturePath(life, theme));
+		table[1] = table[2]; // life 0 has no image
+		return table;
+	}
+
+	/**
+	 * Returns the image handle of the block life from the handle table
+	 * 
+	 * @param table
+	 *            table from {@link #resolveBlockHandles(int, AssetManager)}
+	 * @param val
+	 *            Value of the block live
+	 * @return int image handle
+	 */
+	public static int getBlockHandle(final int[] table, final int val) {
+		if (val > MAX_BLOCK_LIFE)
+			return table[MAX_BLOCK_LIFE + 1];
+		if (val < -1)
+			return table[2];
+		return table[val + 1];
+	}
+
+	/**
+	 * Returns the bundle file of the theme
+	 * 
+	 * @param id
+	 *            Theme id
+	 * @return File, may not exist
+	 */
+	public static File getThemeFile(final int id) {
+		return new File(THEME_DIR, "theme" + id + ".theme");
+	}
+
+	/**
+	 * Returns whether the theme exists, the base theme 0 always does
+	 * 
+	 * @param id
+	 *            Theme id
+	 * @return true if existing
+	 */
+	public static boolean hasTheme(final int id) {
+		return id == 0 || getThemeFile(id).exists();
+	}
+
+	/**
+	 * Returns the theme with the specified id<br>
+	 * Loaded once from <code>themes/theme&lt;id&gt;.theme</code> on top of the
+	 * base theme, unknown themes use the base theme
+	 * 
+	 * @param id
+	 *            Theme id
+	 * @return Theme
+	 */
+	public static synchronized Theme getTheme(final int id) {
+		Theme theme = themes.get(id);
+		if (theme == null) {
+			if (base == null)
+				base = Theme.load(0, Theme.getBuiltin(), new File(THEME_DIR, "base.theme"));
+			File file = getThemeFile(id);
+			if (file.exists()) {
+				theme = Theme.load(id, base, file);
+			} else {
+				if (id != 0)
+					logger.warn("Unknown theme {}, using base theme", id);
+				theme = new Theme(id, base);
+			}
+			themes.put(id, theme);
+		}
+		return theme;
+	}
+
 	/**
 	 * Returns the path to the picture of this block
 	 * 
@@ -22,38 +120,14 @@ public class ThemeManager {
 	 * @return String with path to block image
 	 */
 	public static String getBlockPicturePath(final int val, final int theme) {
-		String path;
-		switch (theme) {
-		case 0:
-		default:
-			switch (val) {
-			case 4:
-				path = "block_4.png";
-				break;
-			case 3:
-				path = "block_3.png";
-				break;
-			case 2:
-				path = "block_2.png";
-				break;
-			case 1:
-				path = "block_1.png";
-				break;
-			case -1:
-				path = "block_m1.png";
-				break;
-			default:
-				if (val > 4) {
-					path = "block_4.png";
-					logger.info("Using highest block for theme: {} val: {}", theme, val);
-				} else {
-					path = "block_1.png";
-					logger.warn("Unknown image request, theme: {} value: {}", theme, val);
-				}
-				break;
-			}
-			break;
+		int life = val;
+		if (val > MAX_BLOCK_LIFE) {
+			life = MAX_BLOCK_LIFE;
+			logger.info("Using highest block for theme: {} val: {}", theme, val);
+		} else if (val == 0 || val < -1) {
+			life = 1;
+			logger.warn("Unknown image request, theme: {} value: {}", theme, val);
 		}
-		return "images/" + path;
+		return getTheme(theme).getPath(Theme.getBlockName(life));
 	}
 }
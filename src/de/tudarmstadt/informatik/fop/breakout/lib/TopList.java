@@ -0,0 +1,128 @@
+package de.tudarmstadt.informatik.fop.breakout.lib;
+
+import java.util.ArrayList;
+
+/**
+ * Bounded sorted list of the best elements<br>
+ * Keeps at most capacity elements in ascending {@link Comparable} order, the
+ * first element being the best. Elements not better than the last one of a
+ * full list are rejected in O(1), others are inserted by binary search.
+ * Equal elements keep their insertion order.<br>
+ * Not thread safe.
+ *
+ * @author Aron Heinecke
+ *
+ * @param <E>
+ *            Element type
+ */
+public class TopList<E extends Comparable<? super E>> {
+	private final Object[] elements;
+	private int size = 0;
+
+	/**
+	 * Creates a new TopList
+	 *
+	 * @param capacity
+	 *            Maximum amount of elements
+	 */
+	public TopList(final int capacity) {
+		if (capacity < 0)
+			throw new IllegalArgumentException("Negative capacity: " + capacity);
+		elements = new Object[capacity];
+	}
+
+	/**
+	 * Returns whether the element would be kept
+	 *
+	 * @param e
+	 *            Element
+	 * @return true if the list has space or the element is better than the
+	 *         last one, always false for a capacity of 0
+	 */
+	public boolean qualifies(final E e) {
+		if (elements.length == 0)
+			return false;
+		return size < elements.length || e.compareTo(get(size - 1)) < 0;
+	}
+
+	/**
+	 * Insert the element if it qualifies, dropping the last one of a full list
+	 *
+	 * @param e
+	 *            Element
+	 * @return true if inserted
+	 */
+	public boolean offer(final E e) {
+		if (!qualifies(e))
+			return false;
+		// first position with an element worse than e
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (get(mid).compareTo(e) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		int moved = Math.min(size, elements.length - 1) - low;
+		System.arraycopy(elements, low, elements, low + 1, moved);
+		elements[low] = e;
+		if (size < elements.length)
+			size++;
+		return true;
+	}
+
+	/**
+	 * Returns the element at the position
+	 *
+	 * @param index
+	 *            Position, 0 is the best element
+	 * @return E element
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return (E) elements[index];
+	}
+
+	/**
+	 * Returns the amount of elements
+	 *
+	 * @return int size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum amount of elements
+	 *
+	 * @return int capacity
+	 */
+	public int getCapacity() {
+		return elements.length;
+	}
+
+	/**
+	 * Remove all elements
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			elements[i] = null;
+		size = 0;
+	}
+
+	/**
+	 * Returns a copy of the elements, best first
+	 *
+	 * @return ArrayList<E> elements
+	 */
+	public ArrayList<E> toList() {
+		ArrayList<E> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			list.add(get(i));
+		return list;
+	}
+}
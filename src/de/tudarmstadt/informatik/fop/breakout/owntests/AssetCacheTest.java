@@ -0,0 +1,93 @@
+package de.tudarmstadt.informatik.fop.breakout.owntests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.AssetCache;
+
+/**
+ * AssetCache eviction & reference counting test
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class AssetCacheTest {
+
+	/**
+	 * Unreferenced assets are evicted in LRU order, referenced ones stay
+	 */
+	@Test
+	public void testEviction() {
+		final ArrayList<String> released = new ArrayList<>();
+		AssetCache<String> cache = new AssetCache<>(30, new AssetCache.Releaser<String>() {
+			@Override
+			public void release(String asset) {
+				released.add(asset);
+			}
+		});
+		cache.put("a", "A", 10, 0);
+		cache.put("b", "B", 10, 1);
+		cache.put("c", "C", 10, 0);
+		assertEquals(30, cache.getUsedBytes());
+		assertNotNull(cache.acquire("a")); // a is now most recently used
+		cache.release("a");
+
+		cache.put("d", "D", 10, 0);
+		assertEquals("LRU unreferenced asset evicted", 1, released.size());
+		assertEquals("C", released.get(0));
+		assertFalse(cache.contains("c"));
+		assertTrue("Referenced asset kept", cache.contains("b"));
+		assertEquals(30, cache.getUsedBytes());
+
+		cache.put("e", "E", 20, 0);
+		assertTrue("Referenced asset kept", cache.contains("b"));
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.getEvictions());
+	}
+
+	/**
+	 * Hit & miss counters
+	 */
+	@Test
+	public void testCounters() {
+		AssetCache<String> cache = new AssetCache<>(100, new AssetCache.Releaser<String>() {
+			@Override
+			public void release(String asset) {
+			}
+		});
+		assertNull(cache.acquire("a"));
+		cache.put("a", "A", 10, 1);
+		assertEquals("A", cache.acquire("a"));
+		assertEquals("A", cache.acquire("a"));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+	}
+
+	/**
+	 * Handles are stable and address the same entries as their keys
+	 */
+	@Test
+	public void testHandles() {
+		AssetCache<String> cache = new AssetCache<>(10, new AssetCache.Releaser<String>() {
+			@Override
+			public void release(String asset) {
+			}
+		});
+		int a = cache.handle("a");
+		assertEquals(a, cache.handle("a"));
+		assertEquals("a", cache.getKey(a));
+		assertNull(cache.acquire(a));
+		cache.put("a", "A", 10, 0);
+		assertEquals("A", cache.acquire(a));
+		cache.release(a);
+		cache.put("b", "B", 10, 0); // evicts a
+		assertFalse(cache.contains(a));
+		assertEquals("Handle survives eviction", a, cache.handle("a"));
+		cache.put(a, "A2", 5, 1);
+		assertEquals("A2", cache.peek("a"));
+	}
+}
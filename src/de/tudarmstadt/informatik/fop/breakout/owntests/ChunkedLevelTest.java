@@ -0,0 +1,143 @@
+package de.tudarmstadt.informatik.fop.breakout.owntests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.newdawn.slick.SlickException;
+
+import de.tudarmstadt.informatik.fop.breakout.gameObjects.Block;
+import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
+import de.tudarmstadt.informatik.fop.breakout.lib.ChunkedLevel;
+import de.tudarmstadt.informatik.fop.breakout.lib.Map;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapGrid;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapLoader;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapLoader.LoadData;
+import de.tudarmstadt.informatik.fop.breakout.lib.ThemeManager;
+
+/**
+ * ChunkedLevel streaming test
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class ChunkedLevelTest {
+	private static final int C_WIDTH = 3;
+	private static final int C_ROWS = 20;
+	private static final int C_STONE_HEIGHT = 10;
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * Rows are dropped past the pass line, only destroyable blocks remain
+	 */
+	@Test
+	public void testStreaming() throws SlickException {
+		MapGrid grid = new MapGrid(C_WIDTH, C_ROWS);
+		for (int y = 0; y < C_ROWS; y++) {
+			grid.set(0, y, 1);
+			grid.set(1, y, -1); // undestroyable
+			grid.set(2, y, 2);
+		}
+		Map map = new Map(new File("unused.map"), true);
+		map.setGrid(grid);
+		AssetManager am = new AssetManager();
+		am.setTestMode(true);
+		ChunkedLevel level = new ChunkedLevel(map, 800, 20, C_STONE_HEIGHT, 2, am);
+		assertEquals("Undestroyable blocks counted", 2 * C_ROWS, level.getRemaining());
+		assertEquals("Blocks instantiated eagerly", 0, level.getLoadedBlocks());
+
+		Listener listener = new Listener();
+		level.update(0, listener);
+		// bottom chunk & the one above within the margin
+		assertEquals(2, level.getLoadedChunks());
+		assertEquals((C_ROWS - ChunkedLevel.CHUNK_ROWS) * C_WIDTH, level.getLoadedBlocks());
+		assertEquals(level.getLoadedBlocks(), listener.added.size());
+		assertEquals(0, listener.removed.size());
+
+		// last row scrolls past the pass line
+		level.update(2 * C_STONE_HEIGHT, listener);
+		assertEquals("Passed row not released", C_WIDTH, listener.removed.size());
+		assertEquals((C_ROWS - ChunkedLevel.CHUNK_ROWS - 1) * C_WIDTH, level.getLoadedBlocks());
+		assertEquals("Passed undestroyable block counted", 2 * C_ROWS - 2, level.getRemaining());
+		for (Block b : listener.removed)
+			assertTrue(b.getLocation().y > C_STONE_HEIGHT * 2);
+
+		Block block = listener.added.get(0);
+		level.blockDestroyed(block);
+		assertEquals(2 * C_ROWS - 3, level.getRemaining());
+		level.blockDestroyed(block); // already removed
+		assertEquals(2 * C_ROWS - 3, level.getRemaining());
+
+		level.release();
+		assertEquals(0, level.getLoadedBlocks());
+		assertEquals(0, level.getLoadedChunks());
+	}
+
+	/**
+	 * Unloading a chunked level releases every block image exactly once
+	 */
+	@Test
+	public void testUnloadMap() throws IOException, SlickException {
+		StringBuilder rows = new StringBuilder();
+		for (int y = 0; y < 3 * ChunkedLevel.CHUNK_ROWS; y++)
+			rows.append("1,-1,2\n");
+		File file = tmp.newFile("tall.map");
+		Files.write(file.toPath(), (rows + ";\n1.0,0,0.0,\n").getBytes());
+		AssetManager am = new AssetManager();
+		am.setTestMode(true);
+		MapLoader loader = new MapLoader(800, 600, am);
+		LoadData ld = loader.instantiate(loader.compile(new Map(file, true)));
+		assertNotNull("Level not chunked", ld.chunkedLevel);
+
+		// as done by the game: destroyable chunk blocks join the block list
+		ld.chunkedLevel.update(0, new ChunkedLevel.ChunkListener() {
+			@Override
+			public void blockAdded(Block block) {
+				if (block.getLife() > 0)
+					ld.destroyableBlockList.add(block);
+			}
+
+			@Override
+			public void blockRemoved(Block block) {
+				ld.destroyableBlockList.remove(block);
+			}
+		});
+		assertFalse(ld.destroyableBlockList.isEmpty());
+		String life1 = ThemeManager.getBlockPicturePath(1, 0);
+		assertTrue(am.getReferences(life1) > 0);
+
+		loader.unloadMap(ld);
+		for (int life = -1; life <= ThemeManager.MAX_BLOCK_LIFE; life++) {
+			if (life != 0)
+				assertEquals("References of life " + life, 0,
+						am.getReferences(ThemeManager.getBlockPicturePath(life, 0)));
+		}
+		assertEquals(0, am.getReferences(ld.pBackgroundPath));
+	}
+
+	/**
+	 * Records added & removed blocks
+	 */
+	private static class Listener implements ChunkedLevel.ChunkListener {
+		private final ArrayList<Block> added = new ArrayList<>();
+		private final ArrayList<Block> removed = new ArrayList<>();
+
+		@Override
+		public void blockAdded(Block block) {
+			added.add(block);
+		}
+
+		@Override
+		public void blockRemoved(Block block) {
+			removed.add(block);
+		}
+	}
+}
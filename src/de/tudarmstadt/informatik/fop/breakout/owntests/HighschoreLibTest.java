@@ -3,16 +3,28 @@ package de.tudarmstadt.informatik.fop.breakout.owntests;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import de.tudarmstadt.informatik.fop.breakout.lib.FenwickTree;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreJournal.Durability;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreWriter;
+import de.tudarmstadt.informatik.fop.breakout.lib.LeaderboardStore;
+import de.tudarmstadt.informatik.fop.breakout.lib.PlayerIndex;
 
 /**
  * HighscoreLib test unit
@@ -25,6 +37,9 @@ public class HighschoreLibTest {
 	private static File file2;
 	private static HighscoreEntry[] testEntries;
 
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
 	@BeforeClass
 	public static void setUpBeforeClass() throws Exception {
 		file1 = File.createTempFile("tmpHighschore1", null);
@@ -44,8 +59,24 @@ public class HighschoreLibTest {
 
 	@AfterClass
 	public static void tearDownAfterClass() throws Exception {
-		file1.delete();
-		file2.delete();
+		deleteWithJournals(file1);
+		deleteWithJournals(file2);
+	}
+
+	/**
+	 * Delete the highscore file and its journals
+	 * 
+	 * @param file
+	 *            Highscore file
+	 */
+	private static void deleteWithJournals(File file) {
+		File[] journals = file.getAbsoluteFile().getParentFile()
+				.listFiles((d, name) -> name.startsWith(file.getName() + ".journal."));
+		if (journals != null) {
+			for (File f : journals)
+				f.delete();
+		}
+		file.delete();
 	}
 
 	@Test
@@ -61,6 +92,7 @@ public class HighschoreLibTest {
 		assertEquals("Highscore list size doesn't match input", cList.size(), output.size());
 		for (int i = 0; i < output.size(); i++)
 			assertTrue("Unequal objects", entryEquals(testEntries[i], output.get(i)));
+		hl.flush(); // journal written before the teardown
 	}
 	
 	@Test
@@ -76,6 +108,219 @@ public class HighschoreLibTest {
 		assertEquals("Highscore list size doesn't match input", testEntries.length, output.size());
 		for (int i = 0; i < output.size(); i++)
 			assertTrue("Unequal objects", entryEquals(testEntries[i], output.get(i)));
+		hl.flush();
+	}
+
+	@Test
+	public void testBounded() throws IOException {
+		File dir = tmp.getRoot();
+		HighscoreLib hl = new HighscoreLib(new File(dir, "highscore.hsc"), 3);
+		for (HighscoreEntry e : testEntries)
+			hl.addEntry(e);
+		hl.addEntry(new HighscoreEntry("late", 50, 3)); // tie, inserted after c
+		hl.addEntry(new HighscoreEntry("low", 0, 1));
+
+		ArrayList<HighscoreEntry> output = hl.getHighscore();
+		assertEquals("Highscore not bounded", 3, output.size());
+		for (int i = 0; i < output.size(); i++)
+			assertTrue("Unequal objects", entryEquals(testEntries[i], output.get(i)));
+		hl.clear();
+
+		// nothing is kept without capacity
+		hl = new HighscoreLib(new File(dir, "empty.hsc"), 0);
+		hl.addEntry(testEntries[0]);
+		hl.addEntry(testEntries[1]);
+		assertEquals(0, hl.getHighscore().size());
+		hl.flush();
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		HighscoreLib hl = new HighscoreLib(new File(tmp.getRoot(), "highscore.hsc"), 10);
+		hl.addEntry(testEntries[1]);
+		List<HighscoreEntry> snapshot = hl.snapshot();
+		hl.addEntry(testEntries[0]);
+		assertEquals("Snapshot changed", 1, snapshot.size());
+		assertEquals(2, hl.snapshot().size());
+		assertSame("Snapshot not reused", hl.snapshot(), hl.snapshot());
+		try {
+			snapshot.clear();
+			fail("Snapshot modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		hl.clear();
+		assertEquals(0, hl.snapshot().size());
+		hl.flush();
+	}
+
+	@Test
+	public void testRank() throws IOException {
+		File dir = tmp.getRoot();
+		HighscoreLib hl = new HighscoreLib(new File(dir, "highscore.hsc"), 3);
+		for (HighscoreEntry e : testEntries)
+			hl.addEntry(e);
+		assertEquals(1, hl.getRank("a"));
+		assertEquals(1, hl.getRank("b")); // same blocks
+		assertEquals(3, hl.getRank("c"));
+		assertEquals(6, hl.getRank("h"));
+		assertEquals(0, hl.getRank("unknown"));
+
+		hl.addEntry(new HighscoreEntry(" J", 5000, 3)); // beyond the initial buckets
+		assertEquals(1, hl.getRank("j"));
+		assertEquals(2, hl.getRank("a"));
+		assertEquals(2, hl.getPlayerHistory("j").size());
+		assertEquals(5000, hl.getPlayerHistory("j").get(0).getNumberOfDestroyedBlocks());
+
+		// histories survive beyond the top list
+		hl = new HighscoreLib(new File(dir, "highscore.hsc"), 3);
+		assertEquals(1, hl.getRank("j"));
+		assertEquals(7, hl.getRank("h"));
+		assertEquals(2, hl.getPlayerHistory("j").size());
+		hl.clear();
+		assertEquals(0, hl.getRank("j"));
+		hl.flush();
+	}
+
+	@Test
+	public void testPlayerHistory() throws IOException {
+		PlayerIndex index = new PlayerIndex();
+		for (int i = 0; i < PlayerIndex.HISTORY_SIZE; i++)
+			assertTrue(index.add(new HighscoreEntry("Bob", 100 + i, 3)));
+		assertFalse("Worse game kept", index.add(new HighscoreEntry("BOB ", 1, 3)));
+		assertEquals("Name of rejected entry", "Bob", index.getPlayer("bob").getName());
+		assertTrue(index.add(new HighscoreEntry("BOB", 500, 3)));
+		assertEquals("BOB", index.getPlayer("bob").getName());
+		assertEquals(PlayerIndex.HISTORY_SIZE, index.getPlayer("bob").getHistory().size());
+
+		// snapshots grow by the bounded history of every player
+		File file = new File(tmp.getRoot(), "highscore.hsc");
+		HighscoreLib hl = new HighscoreLib(file, 5);
+		int players = 30;
+		for (int p = 0; p < players; p++) {
+			for (int i = 0; i < PlayerIndex.HISTORY_SIZE + 2; i++)
+				hl.addEntry(new HighscoreEntry("p" + p, p * 100 + i, 3));
+		}
+		hl = new HighscoreLib(file, 5); // compacts the replayed journal
+		hl.flush();
+		long records = Files.readAllLines(file.toPath()).stream().filter(l -> !l.startsWith("#")).count();
+		assertEquals("Snapshot not bounded", players * PlayerIndex.HISTORY_SIZE, records);
+		assertEquals(PlayerIndex.HISTORY_SIZE, hl.getPlayerHistory("p0").size());
+	}
+
+	@Test
+	public void testHugeBlocks() throws IOException {
+		try {
+			new FenwickTree(1024).add(2000000000, 1);
+			fail("Bucket beyond the maximum accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		File file = new File(tmp.getRoot(), "highscore.hsc");
+		HighscoreLib hl = new HighscoreLib(file, 10);
+		hl.addEntry(new HighscoreEntry("huge", Integer.MAX_VALUE, 3));
+		hl.addEntry(new HighscoreEntry("max", PlayerIndex.MAX_BUCKET, 3));
+		hl.addEntry(testEntries[0]);
+		assertEquals("Out of range entry kept", 0, hl.getRank("huge"));
+		assertEquals(1, hl.getRank("max"));
+		assertEquals(2, hl.getRank("a"));
+		hl.flush();
+
+		PlayerIndex index = new PlayerIndex();
+		index.add(new HighscoreEntry("huge", Integer.MAX_VALUE, 3));
+		index.add(new HighscoreEntry("max", PlayerIndex.MAX_BUCKET, 3));
+		assertEquals("Overflow bucket not shared", 1, index.getRank(PlayerIndex.MAX_BUCKET));
+		assertEquals(3, index.getRank(PlayerIndex.MAX_BUCKET - 1));
+
+		// corrupt journal record
+		File[] journals = tmp.getRoot().listFiles((d, name) -> name.contains(".journal."));
+		assertEquals("One journal expected", 1, journals.length);
+		try (FileOutputStream out = new FileOutputStream(journals[0], true)) {
+			out.write("x:2000000000:1\ny:-5:1\nz:5:NaN\n".getBytes());
+		}
+		hl = new HighscoreLib(file, 10);
+		assertEquals("Out of range records not dropped", 2, hl.getHighscore().size());
+		assertEquals(0, hl.getRank("x"));
+		assertEquals(0, hl.getRank("y"));
+		assertEquals(0, hl.getRank("z"));
+		hl.flush();
+	}
+
+	@Test
+	public void testLeaderboards() throws Exception {
+		File dir = tmp.getRoot();
+		LeaderboardStore store = new LeaderboardStore(dir, 10, Durability.ASYNC);
+		assertFalse(store.exists("ab12"));
+		assertEquals("Shard loaded eagerly", 0, store.getLoadedCount());
+		HighscoreLib shard = store.get("ab12");
+		assertSame(shard, store.get("ab12"));
+		shard.addEntry(new HighscoreEntry("a", 10, 1));
+		assertTrue(store.exists("ab12"));
+		assertEquals(0, store.get("cd34").getHighscore().size());
+		shard.flush();
+		store.get("cd34").flush();
+
+		store = new LeaderboardStore(dir, 10, Durability.ASYNC);
+		assertTrue(store.exists("ab12"));
+		assertEquals(1, store.get("ab12").getHighscore().size());
+		assertEquals(1, store.getLoadedCount());
+		assertSame("Prefetched shard not kept", store.prefetch("ef56").get(), store.get("ef56"));
+		assertEquals(2, store.getLoadedCount());
+		store.get("ab12").flush();
+	}
+
+	@Test
+	public void testRecovery() throws IOException {
+		File dir = tmp.getRoot();
+		File file = new File(dir, "highscore.hsc");
+		HighscoreLib hl = new HighscoreLib(file, 10);
+		for (HighscoreEntry e : testEntries)
+			hl.addEntry(e);
+		hl.flush();
+
+		// crash while appending a record
+		File[] journals = dir.listFiles((d, name) -> name.contains(".journal."));
+		assertEquals("One journal expected", 1, journals.length);
+		try (FileOutputStream out = new FileOutputStream(journals[0], true)) {
+			out.write("torn:1".getBytes());
+		}
+
+		hl = new HighscoreLib(file, 10);
+		ArrayList<HighscoreEntry> output = hl.getHighscore();
+		assertEquals("Torn record not dropped", testEntries.length, output.size());
+		for (int i = 0; i < output.size(); i++)
+			assertTrue("Unequal objects", entryEquals(testEntries[i], output.get(i)));
+		hl.flush();
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		File file = new File(tmp.getRoot(), "highscore.hsc");
+		HighscoreWriter writer = new HighscoreWriter();
+		HighscoreLib hl = new HighscoreLib(file, 10, Durability.FSYNC, writer);
+		hl.addEntry(testEntries[0]);
+		hl.flush();
+
+		// writes of other files are not waited for
+		CountDownLatch blocked = new CountDownLatch(1);
+		writer.submit(new File(tmp.getRoot(), "other.hsc"), () -> {
+			try {
+				blocked.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		long start = System.nanoTime();
+		HighscoreLib loaded = new HighscoreLib(file, 10, Durability.FSYNC, writer);
+		assertEquals(1, loaded.getHighscore().size());
+		loaded.clear(); // queued behind the blocked write
+		assertEquals(0, loaded.getHighscore().size());
+		assertTrue("Waited for other file", System.nanoTime() - start < 1000000000L);
+
+		blocked.countDown();
+		writer.close(); // writes the cleared highscore
+		assertEquals(0, new HighscoreLib(file, 10).getHighscore().size());
 	}
 
 	/**
@@ -0,0 +1,154 @@
+package de.tudarmstadt.informatik.fop.breakout.owntests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelGenerator;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelGenerator.Candidate;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelGenerator.Symmetry;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapGrid;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapMetrics;
+
+/**
+ * LevelGenerator & MapMetrics test unit
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class LevelGeneratorTest {
+	private static final long C_SEED = 42;
+	private static final int C_LEVELS = 200;
+
+	/**
+	 * Same seed & index result in the same level
+	 */
+	@Test
+	public void testDeterministic() {
+		LevelGenerator a = new LevelGenerator(C_SEED);
+		LevelGenerator b = new LevelGenerator(C_SEED);
+		for (long i = 0; i < 20; i++)
+			assertGridEquals(a.generateGrid(i), b.generateGrid(i));
+		assertFalse("Levels not seeded", gridEquals(a.generateGrid(0), new LevelGenerator(C_SEED + 1).generateGrid(0)));
+
+		ArrayList<Candidate> batch = a.generateBatch(5, 20, 3);
+		assertEquals(20, batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			assertEquals(5 + i, batch.get(i).getIndex());
+			assertGridEquals(b.generateGrid(5 + i), batch.get(i).getGrid());
+		}
+	}
+
+	/**
+	 * Mirrored levels are symmetric
+	 */
+	@Test
+	public void testSymmetry() {
+		LevelGenerator generator = new LevelGenerator(C_SEED);
+		EnumSet<Symmetry> seen = EnumSet.noneOf(Symmetry.class);
+		for (long i = 0; i < C_LEVELS; i++) {
+			Symmetry symmetry = generator.getSymmetry(i);
+			seen.add(symmetry);
+			MapGrid grid = generator.generateGrid(i);
+			boolean mirrorX = symmetry == Symmetry.MIRROR_X || symmetry == Symmetry.MIRROR_XY;
+			boolean mirrorY = symmetry == Symmetry.MIRROR_Y || symmetry == Symmetry.MIRROR_XY;
+			for (int y = 0; y < LevelGenerator.HEIGHT; y++) {
+				for (int x = 0; x < LevelGenerator.WIDTH; x++) {
+					if (mirrorX)
+						assertEquals("Level " + i + " not mirrored on x", grid.get(x, y),
+								grid.get(LevelGenerator.WIDTH - 1 - x, y));
+					if (mirrorY)
+						assertEquals("Level " + i + " not mirrored on y", grid.get(x, y),
+								grid.get(x, LevelGenerator.HEIGHT - 1 - y));
+				}
+			}
+		}
+		assertEquals("Not all symmetries generated", EnumSet.allOf(Symmetry.class), seen);
+	}
+
+	/**
+	 * Blocks boxed in by undestroyable ones are unreachable
+	 */
+	@Test
+	public void testReachability() {
+		MapGrid grid = new MapGrid(5, 4);
+		grid.fillRow(0, -1);
+		grid.set(0, 0, 2);
+		// box around (3,1)
+		grid.set(2, 1, -1);
+		grid.set(3, 1, 3);
+		grid.set(4, 1, -1);
+		grid.set(2, 2, -1);
+		grid.set(3, 2, -1);
+		grid.set(4, 2, -1);
+		grid.set(1, 3, 1);
+
+		MapMetrics metrics = MapMetrics.measure(grid);
+		assertEquals(3, metrics.getDestroyable());
+		assertEquals(9, metrics.getUndestroyable());
+		assertEquals("Boxed in block reachable", 2, metrics.getReachable());
+		assertFalse(metrics.isFinishable());
+
+		grid.set(3, 2, 1); // open the box
+		metrics = MapMetrics.measure(grid);
+		assertEquals(4, metrics.getReachable());
+		assertTrue(metrics.isFinishable());
+		assertFalse("No blocks finishable", MapMetrics.measure(new MapGrid(3, 3)).isFinishable());
+	}
+
+	/**
+	 * Batches need at least one thread
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchThreads() {
+		new LevelGenerator(C_SEED).generateBatch(0, 10, 0);
+	}
+
+	/**
+	 * Batches can't have a negative size
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchCount() {
+		new LevelGenerator(C_SEED).generateBatch(0, -1, 1);
+	}
+
+	/**
+	 * Chances are between 0 and 1
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUndestroyableChance() {
+		new LevelGenerator(C_SEED).setUndestroyableChance(1.5f);
+	}
+
+	/**
+	 * Assert both grids are equal
+	 *
+	 * @param expected
+	 * @param actual
+	 */
+	private void assertGridEquals(MapGrid expected, MapGrid actual) {
+		assertTrue("Grids differ", gridEquals(expected, actual));
+	}
+
+	/**
+	 * Returns whether both grids have the same size & content
+	 *
+	 * @param a
+	 * @param b
+	 * @return true if equal
+	 */
+	private boolean gridEquals(MapGrid a, MapGrid b) {
+		if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight())
+			return false;
+		for (int y = 0; y < a.getHeight(); y++) {
+			for (int x = 0; x < a.getWidth(); x++) {
+				if (a.get(x, y) != b.get(x, y))
+					return false;
+			}
+		}
+		return true;
+	}
+}
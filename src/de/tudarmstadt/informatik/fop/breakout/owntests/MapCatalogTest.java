@@ -0,0 +1,190 @@
+package de.tudarmstadt.informatik.fop.breakout.owntests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
+import de.tudarmstadt.informatik.fop.breakout.lib.ContentHash;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelCache;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelLayout;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapCatalog;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapLoader;
+
+/**
+ * MapCatalog & LevelCache test unit
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapCatalogTest {
+	private static final String C_SETTINGS = ";\n1.0,0,0.0,\n";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	/**
+	 * Only consecutive levels are counted
+	 */
+	@Test
+	public void testLevelCount() throws IOException {
+		File dir = tmp.newFolder("maps");
+		writeMap(new File(dir, "level1.map"), "1,1\n");
+		writeMap(new File(dir, "level2.map"), "1,2\n");
+		writeMap(new File(dir, "level4.map"), "1,3\n");
+		writeMap(new File(dir, "custom.map"), "1,4\n");
+		MapCatalog catalog = new MapCatalog(dir, new File(tmp.getRoot(), "maps.index"));
+		catalog.refresh();
+		assertEquals(4, catalog.size());
+		assertEquals(2, catalog.getLevelCount());
+		assertEquals(new File(dir, "level2.map"), catalog.getLevel(2));
+		assertNull(catalog.getLevel(3));
+		assertNotNull(catalog.get("custom"));
+		assertEquals(2, catalog.get("level1.map").getDestroyableBlockCount());
+	}
+
+	/**
+	 * Maps are scanned again only if modification time or size changed
+	 */
+	@Test
+	public void testRefresh() throws IOException {
+		File dir = tmp.newFolder("maps");
+		File index = new File(tmp.getRoot(), "maps.index");
+		File map = new File(dir, "level1.map");
+		writeMap(map, "1,1\n");
+		MapCatalog catalog = new MapCatalog(dir, index);
+		catalog.refresh();
+		String hash = catalog.get("level1").getHash();
+		assertEquals(ContentHash.of(map), hash);
+		assertTrue("Index written", index.exists());
+
+		// same size & time, the indexed metadata is kept
+		long modified = map.lastModified();
+		writeMap(map, "2,2\n");
+		map.setLastModified(modified);
+		catalog = new MapCatalog(dir, index);
+		catalog.refresh();
+		assertEquals("Unchanged map scanned again", hash, catalog.get("level1").getHash());
+
+		map.setLastModified(modified - 10000);
+		catalog.refresh();
+		assertEquals(ContentHash.of(map), catalog.get("level1").getHash());
+		assertEquals(2, catalog.get("level1").getBlockCount(2));
+
+		writeMap(map, "1,1,1\n"); // size changed
+		map.setLastModified(modified - 10000);
+		catalog.refresh();
+		assertEquals(3, catalog.get("level1").getBlockCount(1));
+
+		assertTrue(map.delete());
+		catalog.refresh();
+		assertNull(catalog.get("level1"));
+		assertEquals(0, catalog.getLevelCount());
+	}
+
+	/**
+	 * Compiled levels are cached in memory & on disk, broken maps never
+	 */
+	@Test
+	public void testLevelCache() throws IOException {
+		File map = tmp.newFile("level1.map");
+		writeMap(map, "1,2,-1\n0,3,4\n");
+		File cacheDir = tmp.newFolder("levels");
+		AssetManager am = new AssetManager();
+		am.setTestMode(true);
+		MapLoader loader = new MapLoader(800, 600, am);
+
+		LevelCache cache = new LevelCache(loader, 4, cacheDir);
+		LevelLayout layout = cache.compile(map);
+		assertEquals(1, cache.getMisses());
+		assertEquals(5, layout.blockCount);
+		assertSame("Memory hit", layout, cache.compile(map));
+		assertEquals(1, cache.getHits());
+		assertEquals("Disk entry written", 1, cacheDir.list().length);
+
+		cache = new LevelCache(loader, 4, cacheDir);
+		LevelLayout disk = cache.compile(map);
+		assertEquals("Disk hit", 1, cache.getHits());
+		assertEquals(0, cache.getMisses());
+		assertEquals(layout.columns, disk.columns);
+		assertEquals(layout.rows, disk.rows);
+		assertEquals(layout.blockCount, disk.blockCount);
+		assertArrayEquals(layout.cellX, disk.cellX);
+		assertArrayEquals(layout.cellY, disk.cellY);
+		assertArrayEquals(layout.posX, disk.posX, 0f);
+		assertArrayEquals(layout.posY, disk.posY, 0f);
+		assertArrayEquals(layout.lives, disk.lives);
+		assertEquals(layout.map.getBallVelocity(), disk.map.getBallVelocity(), 0f);
+
+		File broken = tmp.newFile("broken.map");
+		Files.write(broken.toPath(), "1,x\n".getBytes());
+		assertNull(cache.compile(broken));
+		assertNull("Broken map cached", cache.compile(broken));
+		assertEquals(1, cacheDir.list().length);
+	}
+
+	/**
+	 * Truncated or corrupt disk entries are recompiled
+	 */
+	@Test
+	public void testLevelCacheCorrupt() throws IOException {
+		File map = tmp.newFile("level1.map");
+		writeMap(map, "1,2,-1\n0,3,4\n");
+		File cacheDir = tmp.newFolder("levels");
+		AssetManager am = new AssetManager();
+		am.setTestMode(true);
+		MapLoader loader = new MapLoader(800, 600, am);
+		LevelLayout layout = new LevelCache(loader, 4, cacheDir).compile(map);
+		File entry = cacheDir.listFiles()[0];
+		byte[] valid = Files.readAllBytes(entry.toPath());
+		int cells = layout.columns * layout.rows;
+
+		// truncated, block count too large & negative, block outside of the grid
+		byte[][] corrupt = { Arrays.copyOf(valid, valid.length - 3), withInt(valid, 27, Integer.MAX_VALUE),
+				withInt(valid, 27, -1), withInt(valid, 31 + cells, layout.columns) };
+		for (byte[] bytes : corrupt) {
+			Files.write(entry.toPath(), bytes);
+			LevelCache cache = new LevelCache(loader, 4, cacheDir);
+			LevelLayout compiled = cache.compile(map);
+			assertEquals("Corrupt entry used", 1, cache.getMisses());
+			assertEquals(layout.blockCount, compiled.blockCount);
+			assertArrayEquals(layout.cellX, compiled.cellX);
+			assertArrayEquals("Entry not recreated", valid, Files.readAllBytes(entry.toPath()));
+		}
+	}
+
+	/**
+	 * Returns a copy of the bytes with an int replaced
+	 *
+	 * @param bytes
+	 * @param offset
+	 *            Position of the int
+	 * @param value
+	 * @return byte[] copy
+	 */
+	private byte[] withInt(byte[] bytes, int offset, int value) {
+		byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).putInt(offset, value);
+		return copy;
+	}
+
+	/**
+	 * Write a text map with default settings
+	 *
+	 * @param file
+	 * @param rows
+	 *            CSV rows
+	 * @throws IOException
+	 */
+	private void writeMap(File file, String rows) throws IOException {
+		Files.write(file.toPath(), (rows + C_SETTINGS).getBytes());
+	}
+}
@@ -3,6 +3,9 @@ package de.tudarmstadt.informatik.fop.breakout.owntests;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.stream.Collectors;
@@ -11,7 +14,10 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import de.tudarmstadt.informatik.fop.breakout.lib.AtomicFileWriter;
+import de.tudarmstadt.informatik.fop.breakout.lib.BinaryMapFormat;
 import de.tudarmstadt.informatik.fop.breakout.lib.Map;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapGrid;
 
 /**
  * Map load / save test
@@ -62,6 +68,67 @@ public class MapTest {
 		iLoadingTest(C_TEST_MAP_DATA, C_VELOCITY, C_GRAVITY, C_THEME, C_TMP_FILE);
 	}
 
+	/**
+	 * Binary format saving & loading test
+	 */
+	@Test
+	public void testBinary() {
+		Map map = new Map(C_TMP_FILE, false);
+		map.setBallVelocity(C_VELOCITY);
+		map.setGravity(C_GRAVITY);
+		map.setTheme(C_THEME);
+		map.setMap(Int2dArrayToArrayList(C_TEST_MAP_DATA));
+		assertTrue("Binary map write", map.writeBinary(C_TMP_FILE));
+		iLoadingTest(C_TEST_MAP_DATA, C_VELOCITY, C_GRAVITY, C_THEME, C_TMP_FILE);
+		Map loaded = new Map(C_TMP_FILE, false);
+		assertTrue(loaded.load());
+		assertTrue("Format detected", loaded.isBinary());
+	}
+
+	/**
+	 * Run length encoded binary map test
+	 */
+	@Test
+	public void testBinaryRle() throws IOException {
+		Map map = new Map(C_TMP_FILE, false);
+		map.setBallVelocity(C_VELOCITY);
+		map.setGravity(C_GRAVITY);
+		map.setTheme(C_THEME);
+		map.setMap(Int2dArrayToArrayList(C_TEST_MAP_DATA));
+		BinaryMapFormat.write(C_TMP_FILE, map, BinaryMapFormat.ENCODING_RLE);
+		iLoadingTest(C_TEST_MAP_DATA, C_VELOCITY, C_GRAVITY, C_THEME, C_TMP_FILE);
+
+		// runs longer than one varint byte
+		MapGrid grid = new MapGrid(300, 4);
+		grid.fillRow(1, 1);
+		grid.fillRow(2, -1);
+		grid.set(150, 2, 3);
+		map.setGrid(grid);
+		assertTrue(map.writeBinary(C_TMP_FILE));
+		assertTrue("Compressed", C_TMP_FILE.length() < BinaryMapFormat.HEADER_SIZE + 300 * 4);
+		Map loaded = new Map(C_TMP_FILE, true);
+		assertTrue(loaded.load());
+		assertEquals(300, loaded.getGrid().getWidth());
+		assertEquals(4, loaded.getGrid().getHeight());
+		assertEquals(300, loaded.getGrid().count(1));
+		assertEquals(299, loaded.getGrid().count(-1));
+		assertEquals(3, loaded.getGrid().get(150, 2));
+	}
+
+	/**
+	 * Binary map with an overflowing size
+	 */
+	@Test
+	public void testBinaryOversized() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(BinaryMapFormat.HEADER_SIZE + 2);
+		header.putInt(BinaryMapFormat.MAGIC).putShort(BinaryMapFormat.VERSION).put(BinaryMapFormat.ENCODING_RLE)
+				.put((byte) 0);
+		header.putInt(65536).putInt(65536).putFloat(C_VELOCITY).putFloat(C_GRAVITY).putInt(C_THEME);
+		header.put((byte) 1).put((byte) 1);
+		Files.write(C_TMP_FILE.toPath(), header.array());
+		assertFalse("Oversized map loaded", new Map(C_TMP_FILE, true).load());
+	}
+
 	/**
 	 * Loading test
 	 */
@@ -70,6 +137,46 @@ public class MapTest {
 		iLoadingTest(C_TEST_MAP_DATA, C_VELOCITY, C_GRAVITY, C_THEME, C_FILE);
 	}
 	
+	/**
+	 * Text map with trailing separators & an overflowing value
+	 */
+	@Test
+	public void testTextParsing() throws IOException {
+		String settings = ";\n" + C_VELOCITY + "," + C_THEME + "," + C_GRAVITY + ",\n";
+		Files.write(C_TMP_FILE.toPath(), ("-1,2,3,\n4,5,6,\n7,7,8,\n" + settings).getBytes());
+		iLoadingTest(C_TEST_MAP_DATA, C_VELOCITY, C_GRAVITY, C_THEME, C_TMP_FILE);
+
+		// 2^32 + 1, wraps to 1 without overflow check
+		Files.write(C_TMP_FILE.toPath(), ("1,4294967297,1\n" + settings).getBytes());
+		assertFalse("Overflowing value loaded", new Map(C_TMP_FILE, true).load());
+	}
+
+	/**
+	 * Failed commit leaves no temporary file
+	 */
+	@Test
+	public void testWriterCleanup() throws IOException {
+		File dir = Files.createTempDirectory("tmpAtomicFileWriter").toFile();
+		File target = new File(dir, "level.map");
+		try {
+			// a non empty directory can't be replaced
+			assertTrue(target.mkdir());
+			assertTrue(new File(target, "keep").createNewFile());
+			try (AtomicFileWriter writer = new AtomicFileWriter(target)) {
+				writer.writeAscii("1,1");
+				writer.commit();
+				fail("Directory replaced");
+			} catch (IOException e) {
+				// expected
+			}
+			assertArrayEquals("Temporary file left", new String[] { "level.map" }, dir.list());
+		} finally {
+			new File(target, "keep").delete();
+			target.delete();
+			dir.delete();
+		}
+	}
+
 	/**
 	 * setBlock bounds test
 	 */
@@ -85,6 +192,34 @@ public class MapTest {
 		assertEquals(20,(int) map.getMap().get(2).get(4));
 	}
 
+	/**
+	 * Grid resize & bulk operations test
+	 */
+	@Test
+	public void testGrid() {
+		MapGrid grid = new MapGrid(2, 2);
+		grid.set(1, 1, -1);
+		grid.set(3, 2, 4); // grows the grid
+		assertEquals(4, grid.getWidth());
+		assertEquals(3, grid.getHeight());
+		assertEquals("Content kept on resize", -1, grid.get(1, 1));
+		assertEquals(0, grid.get(10, 10));
+		grid.fillRow(0, 2);
+		grid.fillColumn(0, 3);
+		int[] row = new int[grid.getWidth()];
+		grid.getRow(0, row);
+		assertArrayEquals(new int[] { 3, 2, 2, 2 }, row);
+		assertEquals(3, grid.count(2));
+		assertEquals(3, grid.count(3));
+
+		try {
+			grid.resize(65536, 65536);
+			fail("Overflowing resize accepted");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Grid changed", 4, grid.getWidth());
+		}
+	}
+
 	/**
 	 * Converts an int[][] to ArrayList<ArrayList<Integer>>
 	 * 
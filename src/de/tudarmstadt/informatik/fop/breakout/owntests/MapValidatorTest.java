@@ -0,0 +1,167 @@
+package de.tudarmstadt.informatik.fop.breakout.owntests;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.informatik.fop.breakout.lib.MapValidator;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapValidator.Issue;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapValidator.Result;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapValidator.Severity;
+
+/**
+ * MapValidator test unit
+ *
+ * @author Aron Heinecke
+ *
+ */
+public class MapValidatorTest {
+	private static final String C_SETTINGS = ";\n1.0,0,0.0,\n";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final MapValidator validator = new MapValidator(800, 600);
+
+	/**
+	 * Valid map without findings
+	 */
+	@Test
+	public void testValid() throws IOException {
+		Result result = validator.validate(writeMap("level1.map", "1,2\n-1,0\n"));
+		assertEquals(Severity.OK, result.getSeverity());
+		assertTrue(result.getIssues().isEmpty());
+		assertEquals(2, result.getMetrics().getDestroyable());
+	}
+
+	/**
+	 * Block boxed in by undestroyable blocks
+	 */
+	@Test
+	public void testUnreachable() throws IOException {
+		Result result = validator.validate(writeMap("boxed.map", "-1,-1,-1\n-1,1,-1\n-1,-1,-1\n1,0,0\n"));
+		assertIssue(result, Severity.ERROR, "UNREACHABLE");
+		assertEquals(1, result.getMetrics().getReachable());
+	}
+
+	/**
+	 * Map with only undestroyable blocks
+	 */
+	@Test
+	public void testNoBlocks() throws IOException {
+		Result result = validator.validate(writeMap("walls.map", "-1,-1\n0,0\n"));
+		assertIssue(result, Severity.ERROR, "NO_BLOCKS");
+	}
+
+	/**
+	 * Map wider than the display
+	 */
+	@Test
+	public void testWidth() throws IOException {
+		StringBuilder row = new StringBuilder("1");
+		for (int i = 0; i < 800 / 50; i++)
+			row.append(",1");
+		Result result = validator.validate(writeMap("wide.map", row + "\n"));
+		assertIssue(result, Severity.ERROR, "WIDTH");
+	}
+
+	/**
+	 * Malformed map file
+	 */
+	@Test
+	public void testParse() throws IOException {
+		Result result = validator.validate(writeMap("broken.map", "1,x\n"));
+		assertIssue(result, Severity.ERROR, "PARSE");
+		assertNull(result.getMetrics());
+	}
+
+	/**
+	 * Report with one line per finding, sorted by map name
+	 */
+	@Test
+	public void testReport() throws IOException {
+		writeMap("b.map", "-1\n");
+		writeMap("a.map", "1\n");
+		ArrayList<Result> results = validator.validateAll(tmp.getRoot(), 2);
+		assertEquals(2, results.size());
+		assertEquals("a.map", results.get(0).getName());
+
+		List<String> lines = writeReport(results);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).startsWith("#"));
+		assertTrue(lines.get(1).startsWith("a.map\tOK\t-\t"));
+		assertTrue(lines.get(2).startsWith("b.map\tERROR\tNO_BLOCKS\t"));
+	}
+
+	/**
+	 * Non ASCII map names are UTF-8 encoded in the report
+	 */
+	@Test
+	public void testReportEncoding() throws IOException {
+		try {
+			writeMap("\u00e4.map", "1\n");
+		} catch (InvalidPathException e) {
+			assumeNoException("File name not supported by the platform", e);
+		}
+		List<String> lines = writeReport(validator.validateAll(tmp.getRoot(), 1));
+		assertTrue("Name not UTF-8 encoded", lines.get(1).startsWith("\u00e4.map\tOK\t"));
+	}
+
+	/**
+	 * Write the report of the results
+	 *
+	 * @param results
+	 * @return List<String> report lines, read as UTF-8
+	 * @throws IOException
+	 */
+	private List<String> writeReport(List<Result> results) throws IOException {
+		File report = new File(tmp.newFolder("report"), "report.tsv");
+		MapValidator.writeReport(report, results);
+		return Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Assert the result contains the finding
+	 *
+	 * @param result
+	 * @param severity
+	 * @param code
+	 */
+	private void assertIssue(Result result, Severity severity, String code) {
+		for (Issue i : result.getIssues()) {
+			if (i.getCode().equals(code)) {
+				assertEquals(severity, i.getSeverity());
+				assertEquals(severity, result.getSeverity());
+				return;
+			}
+		}
+		fail("No " + code + " finding");
+	}
+
+	/**
+	 * Write a text map with default settings
+	 *
+	 * @param name
+	 *            File name
+	 * @param rows
+	 *            CSV rows
+	 * @return File
+	 * @throws IOException
+	 */
+	private File writeMap(String name, String rows) throws IOException {
+		File file = new File(tmp.getRoot(), name);
+		Files.write(file.toPath(), (rows + C_SETTINGS).getBytes());
+		return file;
+	}
+}
@@ -19,6 +19,7 @@ import de.tudarmstadt.informatik.fop.breakout.gui.TextInputField;
 import de.tudarmstadt.informatik.fop.breakout.gui.Button.ButtonAction;
 import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
 import de.tudarmstadt.informatik.fop.breakout.lib.Map;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapCatalog;
 import de.tudarmstadt.informatik.fop.breakout.ui.Breakout;
 
 /**
@@ -66,7 +67,7 @@ public class EditorState extends GameState<Breakout> {
 						logger.trace("Load clicked");
 						if (pathInputField.getText() == "")
 							return;
-						map = new Map(pathInputField.getText(), false);
+						map = new Map(getMapFile(pathInputField.getText()), false);
 						if (map.load())
 							for (GameObject o : objects)
 								if (o instanceof BlockSetter)
@@ -80,12 +81,13 @@ public class EditorState extends GameState<Breakout> {
 					@Override
 					public void action(GameContainer container, StateBasedGame game, GameState state, int delta) {
 						logger.trace("Save clicked");
-						File f = new File(pathInputField.getText());
+						File f = getMapFile(pathInputField.getText());
 						map = new Map(f, false);
 						for (GameObject o : objects)
 							if (o instanceof BlockSetter)
 								((BlockSetter) o).writeMap(map);
-						map.write();
+						if (map.write())
+							stateData.getMapCatalog().refresh();
 					}
 				}));
 
@@ -111,4 +113,17 @@ public class EditorState extends GameState<Breakout> {
 		super.update(container, game, delta);
 		pathInputField.update(container, game, this, delta);
 	}
+
+	/**
+	 * Returns the file of the map<br>
+	 * Looks up map names in the catalog, anything else is used as path
+	 * 
+	 * @param input
+	 *            map name or path
+	 * @return File of the map
+	 */
+	private File getMapFile(final String input) {
+		MapCatalog.Entry entry = stateData.getMapCatalog().get(input);
+		return entry == null ? new File(input) : entry.getFile();
+	}
 }
@@ -1,7 +1,8 @@
 package de.tudarmstadt.informatik.fop.breakout.states;
 
+import java.io.File;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,18 +19,26 @@ import de.tudarmstadt.informatik.fop.breakout.gui.Background;
 import de.tudarmstadt.informatik.fop.breakout.gui.Button;
 import de.tudarmstadt.informatik.fop.breakout.gui.Button.ButtonAction;
 import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapCatalog;
 import de.tudarmstadt.informatik.fop.breakout.ui.Breakout;
 
 /**
  * Class representing the highscore state of the game<br>
- * This draws the current highscore to the screen providing a clear option
+ * This draws the current highscore to the screen providing a clear option.
+ * Left & right switch between the global highscore and the leaderboards of
+ * the levels, which are loaded on first view.
  * 
  * @author Aron Heinecke
  */
 public class HighscoreState extends GameState<Breakout> {
 
-	private ArrayList<HighscoreEntry> highscore;
+	private List<HighscoreEntry> highscore;
+	private HighscoreLib board;
+	// 0 for the global highscore, otherwise the level
+	private int view;
+	private String title;
 	private Logger logger = LogManager.getLogger(this);
 	private DecimalFormat timeFormat = new DecimalFormat("#.##");
 	
@@ -46,7 +55,26 @@ public class HighscoreState extends GameState<Breakout> {
 	@Override
 	public void enter(GameContainer container, StateBasedGame game) throws SlickException {
 		super.enter(container, game);
-		highscore = stateData.getHighscore().getHighscore();
+		view = 0;
+		showView();
+	}
+
+	/**
+	 * Show the highscore of the current view
+	 */
+	private void showView() {
+		board = stateData.getHighscore();
+		title = "All levels";
+		if (view > 0) {
+			MapCatalog catalog = stateData.getMapCatalog();
+			File file = catalog.getLevel(view);
+			MapCatalog.Entry entry = file == null ? null : catalog.get(file.getName());
+			if (entry != null) {
+				board = stateData.getLeaderboards().get(entry);
+				title = "Level " + view;
+			}
+		}
+		highscore = board.snapshot();
 	}
 
 	@Override
@@ -70,8 +98,8 @@ public class HighscoreState extends GameState<Breakout> {
 					@Override
 					public void action(GameContainer container, StateBasedGame game, GameState state, int delta) {
 						logger.trace("Clear clicked");
-						highscore.clear();
-						stateData.getHighscore().clear();
+						board.clear();
+						highscore = board.snapshot();
 					}
 				}));
 
@@ -91,6 +119,8 @@ public class HighscoreState extends GameState<Breakout> {
 		g.fillRect(offsetX-10, offsetY-30, 400, 250);
 		g.setColor(Color.white);
 		
+		g.drawString("< " + title + " >", offsetX, 145);
+
 		// draw header
 		g.drawString("Blocks", offsetX, 180);
 		g.drawString("Time", offsetX + 90, 180);
@@ -115,6 +145,14 @@ public class HighscoreState extends GameState<Breakout> {
 		Input input = container.getInput();
 		if (input.isKeyPressed(Input.KEY_ESCAPE))
 			game.enterState(GameParameters.MAINMENU_STATE);
+		int levels = stateData.getMapCatalog().getLevelCount();
+		if (input.isKeyPressed(Input.KEY_RIGHT)) {
+			view = view >= levels ? 0 : view + 1;
+			showView();
+		} else if (input.isKeyPressed(Input.KEY_LEFT)) {
+			view = view <= 0 ? levels : view - 1;
+			showView();
+		}
 	}
 
 }
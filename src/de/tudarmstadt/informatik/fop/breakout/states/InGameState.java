@@ -2,6 +2,8 @@ package de.tudarmstadt.informatik.fop.breakout.states;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,6 +20,7 @@ import de.tudarmstadt.informatik.fop.breakout.constants.GameParameters;
 import de.tudarmstadt.informatik.fop.breakout.gameObjects.Ball;
 import de.tudarmstadt.informatik.fop.breakout.gameObjects.Block;
 import de.tudarmstadt.informatik.fop.breakout.gameObjects.Item;
+import de.tudarmstadt.informatik.fop.breakout.gameObjects.ParticleSystem;
 import de.tudarmstadt.informatik.fop.breakout.gameObjects.Sprite;
 import de.tudarmstadt.informatik.fop.breakout.gameObjects.Stick;
 import de.tudarmstadt.informatik.fop.breakout.gui.Background;
@@ -27,9 +30,16 @@ import de.tudarmstadt.informatik.fop.breakout.gui.Clock;
 import de.tudarmstadt.informatik.fop.breakout.gui.Label;
 import de.tudarmstadt.informatik.fop.breakout.gui.TextInputField;
 import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
+import de.tudarmstadt.informatik.fop.breakout.lib.ChunkedLevel;
+import de.tudarmstadt.informatik.fop.breakout.lib.ChunkedLevel.ChunkListener;
 import de.tudarmstadt.informatik.fop.breakout.lib.EventAceptor;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelCache;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelLayout;
+import de.tudarmstadt.informatik.fop.breakout.lib.LevelPrefetcher;
 import de.tudarmstadt.informatik.fop.breakout.lib.Map;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapCatalog;
 import de.tudarmstadt.informatik.fop.breakout.lib.MapLoader;
 import de.tudarmstadt.informatik.fop.breakout.lib.MapLoader.LoadData;
 import de.tudarmstadt.informatik.fop.breakout.ui.Breakout;
@@ -44,8 +54,15 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 
 	private final Logger logger = LogManager.getLogger(this);
 
-	private final static int I_MAX_LEVEL = 11;
+	private final static int I_MAX_PARTICLES = 2048;
+	private final static int I_PARTICLES_PER_BLOCK = 24;
+	private final static Color C_DEBRIS = new Color(220, 220, 220);
+	// pixels per second chunked levels scroll down
+	private final static float F_SCROLL_SPEED = 8f;
+	private final static int I_LEVEL_CACHE_SIZE = 16;
 	private MapLoader mapLoader;
+	private LevelCache levelCache;
+	private LevelPrefetcher prefetcher;
 	private Map map;
 	private LoadData levelData;
 
@@ -62,13 +79,39 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 
 	private Clock clock;
 	private Label blocksDestroyed;
+	private final ParticleSystem particles = new ParticleSystem(I_MAX_PARTICLES);
+	// resolved once, shared by all items & life sprites
+	private Image itemImage;
+	private Image ballImage;
 
 	private ArrayList<Block> blockList;
+	private ChunkedLevel chunkedLevel;
+	// only called outside of the object updates, objects can be changed directly
+	private final ChunkListener chunkListener = new ChunkListener() {
+		@Override
+		public void blockAdded(Block block) {
+			if (block.getLife() > 0)
+				blockList.add(block);
+			objects.add(objects.indexOf(particles), block); // below particles & ball
+		}
+
+		@Override
+		public void blockRemoved(Block block) {
+			blockList.remove(block);
+			objects.remove(block);
+		}
+	};
 	private ArrayList<Sprite> livesLeft = new ArrayList<>();;
 
 	private int level;
 
 	private int score = 0;
+	// results of the played levels, added to the leaderboards of their maps
+	private final ArrayList<LevelResult> levelResults = new ArrayList<>();
+	// leaderboard of the current level, loaded in the background
+	private Future<HighscoreLib> levelLeaderboard;
+	private int levelStartScore;
+	private float levelStartTime;
 
 	boolean isPaused = false;
 	boolean isLost = false;
@@ -83,6 +126,8 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	public InGameState(final int stateID, final Breakout stateData) {
 		super(stateID, stateData, stateData.getWidth(), stateData.getHeight());
 		this.mapLoader = new MapLoader(stateData.getWidth(), stateData.getHeight(), stateData.getAssetManager());
+		this.levelCache = new LevelCache(mapLoader, I_LEVEL_CACHE_SIZE, new File("cache/levels"));
+		this.prefetcher = new LevelPrefetcher(levelCache);
 		enableCE = false;
 	}
 
@@ -91,11 +136,13 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 		super.enter(container, game);
 		this.level = 1;
 		this.score = 0;
+		levelResults.clear();
 		this.isPaused = false;
 		this.isLost = false;
 		this.clock = null; // reset clock
 		livesLeft.clear();
 		this.blocksDestroyed = null;
+		particles.clear();
 		initLevel();
 		generateLiveBalls(3);
 	}
@@ -104,18 +151,24 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	 * Returns a map based in the ingoing level
 	 * 
 	 * @param level
-	 * @return String Path to map
+	 * @return File of the map
 	 */
-	private String getLevel(int level) {
-		String path = "level";
-		if (level > 0 && level <= I_MAX_LEVEL) {
-			path += level;
-		} else {
+	private File getLevel(int level) {
+		File file = stateData.getMapCatalog().getLevel(level);
+		if (file == null) {
 			logger.warn("Unknown Level: {}", level);
-			path += 1;
+			file = new File("maps/level1.map");
 		}
-		path += ".map";
-		return "maps/" + path;
+		return file;
+	}
+
+	/**
+	 * Returns the amount of levels
+	 * 
+	 * @return int amount of levels
+	 */
+	private int getLevelCount() {
+		return stateData.getMapCatalog().getLevelCount();
 	}
 
 	/**
@@ -126,16 +179,27 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	private void initLevel() {
 		bLoadNext = false;
 		objects.clear();
+		// released after loading the next level, keeping shared theme images
+		LoadData previous = levelData;
+		levelData = null;
 		try {
 			objects.add(0, null);
-			map = new Map(new File(getLevel(level)), true);
-			levelData = mapLoader.loadMap(map);
+			File file = getLevel(level);
+			LevelLayout layout = prefetcher.take(file);
+			if (layout == null) // not prefetched, load synchronously
+				layout = levelCache.compile(file);
+			if (layout == null)
+				throw new SlickException("Unable to load map " + file);
+			map = layout.map;
+			levelData = mapLoader.instantiate(layout);
 
 			objects.set(0, new Background(levelData.pBackground, this));
 
 			this.blockList = levelData.destroyableBlockList;
+			this.chunkedLevel = levelData.chunkedLevel;
 			objects.addAll(blockList);
 			objects.addAll(levelData.undestroyableBlockList);
+			objects.add(particles);
 
 			objects.add(stick = new Stick(getStickPosition(), 100, 10, levelData.pStick));
 
@@ -144,11 +208,27 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 
 			objects.addAll(livesLeft);
 
+			if (chunkedLevel != null) // add the visible chunks
+				chunkedLevel.update(0, chunkListener);
 		} catch (SlickException e) {
 			logger.error("Error at loading Map: ", e);
+			// skip the level
+			objects.clear();
+			chunkedLevel = null;
+			bLoadNext = true;
 		}
+		if (previous != null)
+			mapLoader.unloadMap(previous);
+		if (level < getLevelCount()) // prepared while this level is played
+			prefetcher.prefetch(getLevel(level + 1));
 		if (clock == null) // don't reset clock on level switch
 			clock = new Clock(new Vector2f(5, 580));
+		File levelFile = stateData.getMapCatalog().getLevel(level);
+		MapCatalog.Entry entry = levelFile == null ? null : stateData.getMapCatalog().get(levelFile.getName());
+		levelLeaderboard = entry == null || levelData == null ? null
+				: stateData.getLeaderboards().prefetch(entry.getHash());
+		levelStartScore = score;
+		levelStartTime = clock.getTimePassed();
 		if (blocksDestroyed == null)
 			blocksDestroyed = new Label(new Vector2f(5, 560), "0");
 		objects.add(clock);
@@ -160,21 +240,17 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	 * 
 	 * @param amount
 	 *            the amount of lives
-	 * @throws SlickException
-	 *             if the Image could not be loaded
 	 */
-	private void generateLiveBalls(int amount) throws SlickException {
+	private void generateLiveBalls(int amount) {
 		objects.remove(this.livesLeft);
 		this.livesLeft = new ArrayList<Sprite>();
-		Image ballImg = stateData.getAssetManager().getImg("images/ball.png");
-
 		int livesOffsetX = 780;
 		int livesOffsetY = 580;
 		int Xdifference = 20;
 
 		for (int i = 0; i < amount; i++) {
 			livesLeft.add(
-					new Sprite(ballImg, new Vector2f(livesOffsetX - i * Xdifference, livesOffsetY), 20, 20, false));
+					new Sprite(ballImage, new Vector2f(livesOffsetX - i * Xdifference, livesOffsetY), 20, 20, false));
 		}
 		objects.addAll(livesLeft);
 	}
@@ -183,6 +259,8 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	public void init(GameContainer container, StateBasedGame game) throws SlickException {
 		logger.entry();
 		AssetManager am = stateData.getAssetManager();
+		itemImage = am.getImg("images/item.png");
+		ballImage = am.getImg("images/ball.png");
 
 		bResume = new Button(new Vector2f(400, 100), 150, 50, am.getImg("images/continue_btn_d.png"),
 				am.getImg("images/continue_btn_m.png"), new ButtonAction() {
@@ -212,6 +290,12 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 						logger.trace("Enter Highscore pressed");
 						stateData.getHighscore()
 								.addEntry(new HighscoreEntry(tName.getText(), score, clock.getTimePassed()));
+						for (LevelResult r : levelResults) {
+							HighscoreLib leaderboard = getLeaderboard(r);
+							if (leaderboard != null)
+								leaderboard.addEntry(new HighscoreEntry(tName.getText(), r.blocks, r.time));
+						}
+						levelResults.clear();
 						game.enterState(GameParameters.HIGHSCORE_STATE);
 					}
 				});
@@ -251,10 +335,16 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 			bResume.update(container, game, this, delta);
 		} else {
 			super.update(container, game, delta);
+			if (chunkedLevel != null && !bLoadNext) {
+				chunkedLevel.update(F_SCROLL_SPEED * delta / 1000f, chunkListener);
+				if (chunkedLevel.getRemaining() == 0) // all rows passed
+					bLoadNext = true;
+			}
 			if (bLoadNext) { // load next level afterwards, avoid race
 								// conditions
+				recordLevel();
 				level++;
-				if (level > I_MAX_LEVEL) {
+				if (level > getLevelCount()) {
 					showHighscoreDialog();
 				} else {
 					initLevel();
@@ -287,6 +377,54 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 		logger.entry();
 		this.asyncRemoveObject(clock); // stop time
 		this.isLost = true;
+		recordLevel();
+	}
+
+	/**
+	 * Record the result of the current level for its leaderboard, once
+	 */
+	private void recordLevel() {
+		if (levelLeaderboard == null)
+			return;
+		levelResults.add(new LevelResult(levelLeaderboard, score - levelStartScore, clock.getTimePassed()
+				- levelStartTime));
+		levelLeaderboard = null;
+	}
+
+	/**
+	 * Returns the leaderboard of the result, loaded while the level was played
+	 * 
+	 * @param r
+	 *            Level result
+	 * @return HighscoreLib or null if it failed to load
+	 */
+	private HighscoreLib getLeaderboard(final LevelResult r) {
+		try {
+			return r.leaderboard.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("Unable to load leaderboard: ", e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * Result of one played level
+	 * 
+	 * @author Aron Heinecke
+	 *
+	 */
+	private static class LevelResult {
+		private final Future<HighscoreLib> leaderboard;
+		private final int blocks;
+		private final float time;
+
+		private LevelResult(final Future<HighscoreLib> leaderboard, final int blocks, final float time) {
+			this.leaderboard = leaderboard;
+			this.blocks = blocks;
+			this.time = time;
+		}
 	}
 
 	@Override
@@ -296,21 +434,19 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 		if (block.getLife() == 0) {
 			// Random Item generation
 			final double random = Math.random();
-			if (random > 0.5) {
-				try {
-					asyncAddObject(new Item(new Image("images/item.png"), block.getLocation(), block.getHeight(),
-							block.getHeight(), false));
-				} catch (SlickException e) {
-					logger.warn("Unable to creat Item", e);
-				}
-			}
+			if (random > 0.5)
+				asyncAddObject(new Item(itemImage, block.getLocation(), block.getHeight(), block.getHeight(), false));
+			particles.emit(block.getLocation().x, block.getLocation().y, I_PARTICLES_PER_BLOCK, 150, 800, C_DEBRIS);
 			// Removes the Block
 			blockList.remove(block);
+			block.releaseImage();
+			if (chunkedLevel != null)
+				chunkedLevel.blockDestroyed(block);
 			blocksDestroyed.setText(String.valueOf(Integer.parseInt(blocksDestroyed.getText()) + 1));
 			this.asyncRemoveObject(block);
 			this.score++;
-			if (blockList.size() == 0) {
-				logger.debug("Level finished");
+			if (chunkedLevel == null ? blockList.size() == 0 : chunkedLevel.getRemaining() == 0) {
+				logger.debug("Level finished, particles dropped: {}", particles.getDroppedCount());
 				bLoadNext = true;
 			}
 		}
@@ -427,11 +563,7 @@ public class InGameState extends GameState<Breakout> implements EventAceptor {
 	 *            the number of lives/balls the player shall have left
 	 */
 	public void setLives(int lives) {
-		try {
-			generateLiveBalls(lives);
-		} catch (SlickException e) {
-			logger.error("Unable to set lives!", e);
-		}
+		generateLiveBalls(lives);
 	}
 
 	/**
@@ -2,7 +2,9 @@ package de.tudarmstadt.informatik.fop.breakout.states;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.newdawn.slick.Color;
 import org.newdawn.slick.GameContainer;
+import org.newdawn.slick.Graphics;
 import org.newdawn.slick.SlickException;
 import org.newdawn.slick.geom.Vector2f;
 import org.newdawn.slick.state.StateBasedGame;
@@ -105,4 +107,16 @@ public class MainMenuState extends GameState<Breakout> {
 		logger.exit();
 	}
 
+	@Override
+	public void render(GameContainer container, StateBasedGame game, Graphics g) throws SlickException {
+		super.render(container, game, g);
+		AssetManager am = stateData.getAssetManager();
+		if (am.isLoading()) { // draw loading bar for the background preload
+			g.setColor(new Color(50, 50, 50, 180));
+			g.fillRect(0, getHeight() - 6, getWidth(), 6);
+			g.setColor(Color.white);
+			g.fillRect(0, getHeight() - 6, getWidth() * am.getLoadProgress(), 6);
+		}
+	}
+
 }
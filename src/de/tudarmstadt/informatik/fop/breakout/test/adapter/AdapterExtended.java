@@ -1,14 +1,49 @@
 package de.tudarmstadt.informatik.fop.breakout.test.adapter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 import java.util.List;
 
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreJournal.Durability;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib.HighscoreEntry;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreWriter;
 
 public class AdapterExtended extends Adapter {
 
-	HighscoreLib hl = new HighscoreLib(10);
+	// highscore of the tests, never the one of the game
+	private static final File HIGHSCORE_DIR = createHighscoreDir();
+	private static final HighscoreWriter HIGHSCORE_WRITER = new HighscoreWriter();
+
+	HighscoreLib hl = new HighscoreLib(new File(HIGHSCORE_DIR, "highschore.hsc"), 10, Durability.ASYNC,
+			HIGHSCORE_WRITER);
+
+	/**
+	 * Returns a temporary highscore directory, deleted with its files on exit
+	 * after the pending writes
+	 * 
+	 * @return File directory
+	 */
+	private static File createHighscoreDir() {
+		try {
+			File dir = Files.createTempDirectory("highscore").toFile();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				HIGHSCORE_WRITER.close();
+				File[] files = dir.listFiles();
+				if (files != null) {
+					for (File f : files)
+						f.delete();
+				}
+				dir.delete();
+			}, "highscore-cleanup"));
+			return dir;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
 	/**
 	 * Use this constructor to set up everything you need.
@@ -1,5 +1,6 @@
 package de.tudarmstadt.informatik.fop.breakout.ui;
 
+import java.io.File;
 import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
@@ -12,7 +13,12 @@ import org.newdawn.slick.state.StateBasedGame;
 
 import de.tudarmstadt.informatik.fop.breakout.constants.GameParameters;
 import de.tudarmstadt.informatik.fop.breakout.lib.AssetManager;
+import de.tudarmstadt.informatik.fop.breakout.lib.AssetManifest;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreJournal.Durability;
 import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreLib;
+import de.tudarmstadt.informatik.fop.breakout.lib.HighscoreWriter;
+import de.tudarmstadt.informatik.fop.breakout.lib.LeaderboardStore;
+import de.tudarmstadt.informatik.fop.breakout.lib.MapCatalog;
 import de.tudarmstadt.informatik.fop.breakout.states.AboutState;
 import de.tudarmstadt.informatik.fop.breakout.states.EditorState;
 import de.tudarmstadt.informatik.fop.breakout.states.HighscoreState;
@@ -39,10 +45,18 @@ public class Breakout extends StateBasedGame implements GameParameters {
 	private final int height;
 
 	private final AssetManager assetManager;
+	private final HighscoreWriter highscoreWriter;
 	private final HighscoreLib highscore;
+	private final LeaderboardStore leaderboards;
+	private final MapCatalog mapCatalog;
 	
 	private InGameState ingState;
 
+	// time per frame to spend on uploading preloaded assets
+	private final static long ASSET_UPLOAD_BUDGET = 4;
+	// highscores are written in the background, syncing doesn't stall a frame
+	private final static Durability HIGHSCORE_DURABILITY = Durability.FSYNC;
+
 	/**
 	 * Main function initiating the game
 	 * 
@@ -67,8 +81,9 @@ public class Breakout extends StateBasedGame implements GameParameters {
 					+ System.getProperty("os.name").toLowerCase());
 		}
 
+		Breakout breakout = null;
 		try {
-			Breakout breakout = new Breakout(true, WINDOW_HEIGHT, WINDOW_WIDTH);
+			breakout = new Breakout(true, WINDOW_HEIGHT, WINDOW_WIDTH);
 			app = new AppGameContainer(new ScalableGame(breakout, breakout.getWidth(), breakout.getHeight(), true));
 			app.setDisplayMode(breakout.getWidth(), breakout.getHeight(), false);
 			app.setTargetFrameRate(FRAME_RATE);
@@ -78,11 +93,15 @@ public class Breakout extends StateBasedGame implements GameParameters {
 			app.setMaximumLogicUpdateInterval(50);
 			app.setMinimumLogicUpdateInterval(1);
 			app.setTitle("Breakout");
-			app.start();
-			breakout.enterState(MAINMENU_STATE);
+			app.setForceExit(false); // exit after closing the game
+			app.start(); // returns once the game is closed
 		} catch (Exception e) {
 			logger.fatal("Crash escalation in main process: ", e);
+		} finally {
+			if (breakout != null)
+				breakout.close();
 		}
+		System.exit(0);
 	}
 
 	/**
@@ -96,11 +115,25 @@ public class Breakout extends StateBasedGame implements GameParameters {
 		logger.trace("Debug: {}", debug);
 		Breakout.debug = debug;
 		this.assetManager = new AssetManager();
-		this.highscore = new HighscoreLib(10);
+		this.assetManager.openArchive(new File("assets.pak"));
+		this.assetManager.enableTextureCache(new File("cache/textures"));
+		this.highscoreWriter = new HighscoreWriter();
+		this.highscore = new HighscoreLib(10, HIGHSCORE_DURABILITY, highscoreWriter);
+		this.leaderboards = new LeaderboardStore(new File("highscores"), 10, HIGHSCORE_DURABILITY, highscoreWriter);
+		this.mapCatalog = new MapCatalog(new File("maps"), new File("cache/maps.index"));
+		this.mapCatalog.refresh();
 		this.height = height;
 		this.width = width;
 	}
 
+	/**
+	 * Close the game resources<br>
+	 * Writes all pending highscores
+	 */
+	public void close() {
+		highscoreWriter.close();
+	}
+
 	/**
 	 * Returns current debug state
 	 * 
@@ -139,6 +172,11 @@ public class Breakout extends StateBasedGame implements GameParameters {
 
 	@Override
 	public void initStatesList(GameContainer arg0) throws SlickException {
+		// called on the thread owning the GL context
+		assetManager.setRenderThread(Thread.currentThread());
+		// decode everything in the background, states will only wait for
+		// what they need in their init
+		assetManager.preload(AssetManifest.load(new File("assets.manifest")).getAll());
 		addState(new MainMenuState(MAINMENU_STATE, this));
 		addState(ingState = new InGameState(GAMEPLAY_STATE, this));
 		addState(new HighscoreState(HIGHSCORE_STATE, this));
@@ -147,6 +185,11 @@ public class Breakout extends StateBasedGame implements GameParameters {
 		addState(new EditorState(EDITOR_STATE, this));
 	}
 
+	@Override
+	protected void preUpdateState(GameContainer container, int delta) throws SlickException {
+		assetManager.update(ASSET_UPLOAD_BUDGET);
+	}
+
 	/**
 	 * Returns the width of this game
 	 * 
@@ -182,7 +225,25 @@ public class Breakout extends StateBasedGame implements GameParameters {
 	public HighscoreLib getHighscore() {
 		return highscore;
 	}
+
+	/**
+	 * Returns the leaderboards per map
+	 * 
+	 * @return the LeaderboardStore
+	 */
+	public LeaderboardStore getLeaderboards() {
+		return leaderboards;
+	}
 	
+	/**
+	 * Returns the catalog of all maps
+	 * 
+	 * @return the MapCatalog
+	 */
+	public MapCatalog getMapCatalog() {
+		return mapCatalog;
+	}
+
 	/**
 	 * Returns the InGameState<br>
 	 * For testing purposes only